@@ -0,0 +1,72 @@
+package com.example.cryptography;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class BackgroundTasks {
+
+    public static final BackgroundTasks WORLD = new BackgroundTasks("Metaphysics-World", Cryptography.WORLD_WORKER_THREADS, Cryptography.WORLD_WORKER_QUEUE);
+    public static final BackgroundTasks CRYPTO = new BackgroundTasks("Metaphysics-Crypto", Cryptography.CRYPTO_WORKER_THREADS, Cryptography.CRYPTO_WORKER_QUEUE);
+
+    private final ThreadPoolExecutor executor;
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+    private final AtomicLong runNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    public BackgroundTasks(String name, int threads, int queueCapacity) {
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 30, TimeUnit.SECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    // Returns false instead of queueing without bound when the pool is saturated.
+    public boolean submit(Runnable task) {
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long startedAt = System.nanoTime();
+                try {
+                    task.run();
+                } finally {
+                    long finishedAt = System.nanoTime();
+                    waitNanos.addAndGet(startedAt - queuedAt);
+                    runNanos.addAndGet(finishedAt - startedAt);
+                    maxLatencyNanos.accumulateAndGet(finishedAt - queuedAt, Math::max);
+                    completed.incrementAndGet();
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    // Latencies are averages over every completed task, in milliseconds.
+    public Map<String, Object> getStats() {
+        long done = completed.get();
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("threads", executor.getMaximumPoolSize());
+        stats.put("active", executor.getActiveCount());
+        stats.put("queued", executor.getQueue().size());
+        stats.put("queueCapacity", executor.getQueue().size() + executor.getQueue().remainingCapacity());
+        stats.put("completed", done);
+        stats.put("rejected", rejected.get());
+        stats.put("avgWaitMs", done == 0 ? 0.0 : waitNanos.get() / 1e6 / done);
+        stats.put("avgRunMs", done == 0 ? 0.0 : runNanos.get() / 1e6 / done);
+        stats.put("maxLatencyMs", maxLatencyNanos.get() / 1e6);
+        return stats;
+    }
+}
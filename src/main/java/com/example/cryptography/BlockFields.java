@@ -0,0 +1,64 @@
+package com.example.cryptography;
+
+import dan200.computercraft.api.lua.LuaException;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.state.BlockState;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class BlockFields {
+
+    public static final String ID = "id";
+    public static final String AIR = "air";
+    public static final String SOLID = "solid";
+    public static final String REPLACEABLE = "replaceable";
+    public static final String RESISTANCE = "resistance";
+    public static final String SKY = "sky";
+
+    private static final Map<Block, String> NAMES = new ConcurrentHashMap<>();
+
+    public static String name(BlockState state) {
+        return NAMES.computeIfAbsent(state.getBlock(), b -> b.getDescriptionId().replace("block.", "").replace(".", ":"));
+    }
+
+    public static String[] parse(Map<?, ?> table, boolean allowSky) throws LuaException {
+        List<String> fields = LuaArgs.getStrings(table);
+        for (String field : fields) {
+            switch (field) {
+                case ID, AIR, SOLID, REPLACEABLE, RESISTANCE -> {
+                }
+                case SKY -> {
+                    if (!allowSky) {
+                        throw new LuaException("Field sky is not available here");
+                    }
+                }
+                default -> throw new LuaException("Unknown field " + field);
+            }
+        }
+        return fields.toArray(new String[0]);
+    }
+
+    public static Object value(String field, BlockState state) {
+        return switch (field) {
+            case AIR -> state.isAir();
+            case SOLID -> state.isSolid();
+            case REPLACEABLE -> state.canBeReplaced();
+            case RESISTANCE -> (int) Math.floor(state.getBlock().getExplosionResistance());
+            default -> name(state);
+        };
+    }
+
+    // Describes everything except sky, which depends on the position rather than the state.
+    public static Map<String, Object> describe(String[] fields, BlockState state) {
+        Map<String, Object> map = new HashMap<>();
+        for (String field : fields) {
+            if (!field.equals(SKY)) {
+                map.put(field, value(field, state));
+            }
+        }
+        return map;
+    }
+}
@@ -0,0 +1,122 @@
+package com.example.cryptography;
+
+import dan200.computercraft.api.lua.IArguments;
+import dan200.computercraft.api.lua.LuaException;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+public class Codec {
+
+    public enum Format { RAW, HEX, BASE64 }
+
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+    private static final byte[] HEX_VALUES = new byte[128];
+
+    static {
+        Arrays.fill(HEX_VALUES, (byte) -1);
+        for (int i = 0; i < 16; i++) {
+            HEX_VALUES[HEX_DIGITS[i]] = (byte) i;
+            HEX_VALUES[Character.toLowerCase(HEX_DIGITS[i])] = (byte) i;
+        }
+    }
+
+    public static String toHex(byte[] src) {
+        char[] out = new char[src.length * 2];
+        for (int i = 0; i < src.length; i++) {
+            int v = src[i] & 0xFF;
+            out[i * 2] = HEX_DIGITS[v >>> 4];
+            out[i * 2 + 1] = HEX_DIGITS[v & 0x0F];
+        }
+        return new String(out);
+    }
+
+    public static byte[] fromHex(String src) throws LuaException {
+        int length = src.length();
+        if ((length & 1) != 0) {
+            throw new LuaException("Malformed hex string: odd length");
+        }
+        byte[] out = new byte[length / 2];
+        for (int i = 0; i < length; i += 2) {
+            int high = hexValue(src.charAt(i));
+            int low = hexValue(src.charAt(i + 1));
+            if (high < 0 || low < 0) {
+                throw new LuaException("Malformed hex string at position " + (high < 0 ? i + 1 : i + 2));
+            }
+            out[i / 2] = (byte) (high << 4 | low);
+        }
+        return out;
+    }
+
+    private static int hexValue(char c) {
+        return c < 128 ? HEX_VALUES[c] : -1;
+    }
+
+    public static Format parseFormat(Object name) throws LuaException {
+        if (name == null) {
+            return Format.HEX;
+        }
+        return switch (name.toString()) {
+            case "raw" -> Format.RAW;
+            case "hex" -> Format.HEX;
+            case "base64" -> Format.BASE64;
+            default -> throw new LuaException("Unknown format " + name + ", expected raw, hex or base64");
+        };
+    }
+
+    public static Format getFormat(IArguments args, int index) throws LuaException {
+        return parseFormat(args.optString(index).orElse(null));
+    }
+
+    public static Format getFormat(IArguments args, int index, Format fallback) throws LuaException {
+        return args.optString(index).isPresent() ? getFormat(args, index) : fallback;
+    }
+
+    // Raw bytes go back as a byte array, which ComputerCraft hands to Lua as a binary-safe string.
+    public static Object encode(byte[] data, Format format) {
+        return switch (format) {
+            case RAW -> data;
+            case BASE64 -> Base64.getEncoder().encodeToString(data);
+            default -> toHex(data);
+        };
+    }
+
+    // Plain data (as opposed to encoded binary) is read byte for byte in raw mode. The encoded modes keep
+    // the original UTF-8 conversion so existing hashes and ciphertexts stay the same.
+    public static byte[] getData(IArguments args, int index, Format format) throws LuaException {
+        if (format == Format.RAW) {
+            return toArray(args.getBytes(index));
+        }
+        return args.getString(index).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public static byte[] decode(IArguments args, int index, Format format) throws LuaException {
+        if (format == Format.RAW) {
+            return toArray(args.getBytes(index));
+        }
+        return decode(args.getString(index), format);
+    }
+
+    // Lua strings reach Java one char per byte, so ISO-8859-1 gives back the exact bytes.
+    public static byte[] decode(String value, Format format) throws LuaException {
+        return switch (format) {
+            case RAW -> value.getBytes(StandardCharsets.ISO_8859_1);
+            case BASE64 -> {
+                try {
+                    yield Base64.getDecoder().decode(value);
+                } catch (IllegalArgumentException e) {
+                    throw new LuaException("Malformed base64 string: " + e.getMessage());
+                }
+            }
+            default -> fromHex(value);
+        };
+    }
+
+    public static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.cryptography;
+
+import com.example.cryptography.Codec.Format;
+import dan200.computercraft.api.lua.IArguments;
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.api.lua.LuaFunction;
+
+import java.io.ByteArrayOutputStream;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// zlib compression for payloads. One-shot calls reuse a Deflater per level and an Inflater per thread,
+// reset between calls, so the native zlib state is only set up once per thread. The streaming objects
+// own theirs and release them when finished. Decompressed output is capped at MAX_DECOMPRESSED_SIZE so a
+// small hostile input cannot expand without bound.
+public class Compression {
+
+    private static final int CHUNK = 8192;
+
+    private static final ThreadLocal<Deflater[]> DEFLATERS = ThreadLocal.withInitial(() -> new Deflater[10]);
+    private static final ThreadLocal<Inflater> INFLATERS = ThreadLocal.withInitial(Inflater::new);
+
+    public static int checkLevel(int level) throws LuaException {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new LuaException("Compression level must be between -1 and 9");
+        }
+        return level;
+    }
+
+    public static byte[] compress(byte[] data, int level) {
+        Deflater[] deflaters = DEFLATERS.get();
+        int slot = level == Deflater.DEFAULT_COMPRESSION ? 6 : level;
+        Deflater deflater = deflaters[slot];
+        if (deflater == null) {
+            deflater = deflaters[slot] = new Deflater(slot);
+        } else {
+            deflater.reset();
+        }
+        deflater.setInput(data);
+        deflater.finish();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length / 2));
+        byte[] buffer = new byte[CHUNK];
+        while (!deflater.finished()) {
+            out.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return out.toByteArray();
+    }
+
+    public static byte[] decompress(byte[] data) throws LuaException {
+        Inflater inflater = INFLATERS.get();
+        inflater.reset();
+        inflater.setInput(data);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, data.length * 2));
+        inflate(inflater, out, 0);
+        if (!inflater.finished()) {
+            throw new LuaException("Truncated compressed data");
+        }
+        return out.toByteArray();
+    }
+
+    // Inflates whatever input is pending into out, which already holds `produced` bytes of this stream.
+    private static void inflate(Inflater inflater, ByteArrayOutputStream out, long produced) throws LuaException {
+        byte[] buffer = new byte[CHUNK];
+        try {
+            while (!inflater.finished()) {
+                int n = inflater.inflate(buffer);
+                if (n == 0) {
+                    if (inflater.needsInput() || inflater.needsDictionary()) {
+                        return;
+                    }
+                    continue;
+                }
+                produced += n;
+                if (produced > Cryptography.MAX_DECOMPRESSED_SIZE) {
+                    throw new LuaException("Decompressed data too large (max " + Cryptography.MAX_DECOMPRESSED_SIZE + " bytes)");
+                }
+                out.write(buffer, 0, n);
+            }
+        } catch (DataFormatException e) {
+            throw new LuaException("Malformed compressed data");
+        }
+    }
+
+    // Compressed pieces concatenate to one zlib stream in raw and hex format; base64 pieces do not.
+    public static final class Compressor {
+        private final Deflater deflater;
+        private final Format format;
+        private boolean finished;
+
+        public Compressor(int level, Format format) {
+            this.deflater = new Deflater(level);
+            this.format = format;
+        }
+
+        @LuaFunction
+        public final synchronized Object update(IArguments args) throws LuaException {
+            checkOpen(finished);
+            deflater.setInput(Codec.toArray(args.getBytes(0)));
+            return Codec.encode(drain(), format);
+        }
+
+        @LuaFunction
+        public final synchronized Object finish() throws LuaException {
+            checkOpen(finished);
+            finished = true;
+            deflater.finish();
+            byte[] out = drain();
+            deflater.end();
+            return Codec.encode(out, format);
+        }
+
+        private byte[] drain() {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[CHUNK];
+            while (true) {
+                int n = deflater.deflate(buffer);
+                if (n == 0 && (deflater.needsInput() || deflater.finished())) {
+                    return out.toByteArray();
+                }
+                out.write(buffer, 0, n);
+            }
+        }
+    }
+
+    public static final class Decompressor {
+        private final Inflater inflater = new Inflater();
+        private final Format format;
+        private long produced;
+        private boolean finished;
+
+        public Decompressor(Format format) {
+            this.format = format;
+        }
+
+        @LuaFunction
+        public final synchronized byte[] update(IArguments args) throws LuaException {
+            checkOpen(finished);
+            if (inflater.finished()) {
+                throw new LuaException("Data after the end of the compressed stream");
+            }
+            inflater.setInput(Codec.decode(args, 0, format));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                inflate(inflater, out, produced);
+            } catch (LuaException e) {
+                finished = true;
+                inflater.end();
+                throw e;
+            }
+            produced += out.size();
+            return out.toByteArray();
+        }
+
+        @LuaFunction
+        public final synchronized void finish() throws LuaException {
+            checkOpen(finished);
+            finished = true;
+            boolean complete = inflater.finished();
+            inflater.end();
+            if (!complete) {
+                throw new LuaException("Truncated compressed data");
+            }
+        }
+    }
+
+    private static void checkOpen(boolean finished) throws LuaException {
+        if (finished) {
+            throw new LuaException("Stream already finished");
+        }
+    }
+}
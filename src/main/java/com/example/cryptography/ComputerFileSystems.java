@@ -0,0 +1,42 @@
+package com.example.cryptography;
+
+import dan200.computercraft.api.filesystem.IFileSystem;
+import dan200.computercraft.api.lua.IComputerSystem;
+import dan200.computercraft.api.lua.ILuaAPI;
+import dan200.computercraft.api.lua.ILuaAPIFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// ServerComputer does not expose the computer's file system, but API factories are handed it. This
+// factory adds a nameless API to every computer whose only job is to publish that file system, by
+// computer id, while the computer is running.
+public class ComputerFileSystems implements ILuaAPIFactory {
+
+    private static final Map<Integer, IComputerSystem> SYSTEMS = new ConcurrentHashMap<>();
+
+    public static IFileSystem get(int computerId) {
+        IComputerSystem system = SYSTEMS.get(computerId);
+        return system == null ? null : system.getFileSystem();
+    }
+
+    @Override
+    public ILuaAPI create(IComputerSystem system) {
+        return new ILuaAPI() {
+            @Override
+            public String[] getNames() {
+                return new String[0];
+            }
+
+            @Override
+            public void startup() {
+                SYSTEMS.put(system.getID(), system);
+            }
+
+            @Override
+            public void shutdown() {
+                SYSTEMS.remove(system.getID(), system);
+            }
+        };
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.cryptography;
+
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import org.joml.Matrix4dc;
+import org.joml.Quaterniondc;
+import org.joml.Vector3d;
+import org.joml.Vector3dc;
+import org.valkyrienskies.core.api.ships.Ship;
+import org.valkyrienskies.mod.common.VSGameUtilsKt;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Where a computer is in world space for one server tick: its position after any ship transform, the ship
+// carrying it and that ship's motion. The ship lookup and transform happen once per tick per computer,
+// however many coord calls read the pose. Off a ship the position is the block position and the ship
+// fields are null.
+public class ComputerPose {
+
+    public final long tick;
+    public final BlockPos pos;
+    public final Level level;
+    public final Ship ship;
+    public final double x;
+    public final double y;
+    public final double z;
+    public final Matrix4dc shipToWorld;
+    public final Quaterniondc rotation;
+    public final Vector3dc velocity;
+    public final Vector3dc omega;
+    // Shared by every caller this tick, so it must not be modified.
+    public final Map<String, Double> coordinate;
+
+    private ComputerPose(long tick, BlockPos pos, Level level) {
+        this.tick = tick;
+        this.pos = pos;
+        this.level = level;
+        this.ship = VSGameUtilsKt.getShipManagingPos(level, pos);
+        if (ship != null) {
+            Vector3d world = VSGameUtilsKt.toWorldCoordinates(ship, pos);
+            this.x = world.x;
+            this.y = world.y;
+            this.z = world.z;
+            this.shipToWorld = ship.getTransform().getShipToWorld();
+            this.rotation = ship.getTransform().getShipToWorldRotation();
+            this.velocity = ship.getVelocity();
+            this.omega = ship.getOmega();
+        } else {
+            this.x = pos.getX();
+            this.y = pos.getY();
+            this.z = pos.getZ();
+            this.shipToWorld = null;
+            this.rotation = null;
+            this.velocity = null;
+            this.omega = null;
+        }
+        this.coordinate = Map.of("x", x, "y", y, "z", z);
+    }
+
+    // Reuses the previous pose while the tick, position and level are unchanged.
+    public static ComputerPose of(ComputerPose previous, BlockPos pos, Level level) {
+        long tick = level.getServer() == null ? 0 : level.getServer().getTickCount();
+        if (previous != null && previous.tick == tick && previous.pos.equals(pos) && previous.level == level) {
+            return previous;
+        }
+        return new ComputerPose(tick, pos, level);
+    }
+
+    public long getShipId() {
+        return ship == null ? -1 : ship.getId();
+    }
+
+    public Map<String, Object> toLua() {
+        Map<String, Object> map = new HashMap<>();
+        map.put("x", x);
+        map.put("y", y);
+        map.put("z", z);
+        map.put("tick", tick);
+        map.put("onShip", ship != null);
+        if (ship != null) {
+            map.put("shipId", ship.getId());
+            map.put("slug", ship.getSlug());
+            map.put("shipyard", Map.of("x", pos.getX(), "y", pos.getY(), "z", pos.getZ()));
+            map.put("rotation", Map.of("x", rotation.x(), "y", rotation.y(), "z", rotation.z(), "w", rotation.w()));
+            map.put("velocity", vector(velocity));
+            map.put("omega", vector(omega));
+        } else {
+            map.put("rotation", Map.of("x", 0.0, "y", 0.0, "z", 0.0, "w", 1.0));
+            map.put("velocity", Map.of("x", 0.0, "y", 0.0, "z", 0.0));
+            map.put("omega", Map.of("x", 0.0, "y", 0.0, "z", 0.0));
+        }
+        return map;
+    }
+
+    private static Map<String, Double> vector(Vector3dc v) {
+        return Map.of("x", v.x(), "y", v.y(), "z", v.z());
+    }
+}
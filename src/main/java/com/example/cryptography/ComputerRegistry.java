@@ -0,0 +1,85 @@
+package com.example.cryptography;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+
+// Where each loaded computer is. The map itself is only touched when a computer is created, moves or shuts
+// down; readers keep the Entry they were given and read its volatile location, so a computer's update()
+// needs no lock and allocates nothing. Entries go away when their computer shuts down or unloads.
+public class ComputerRegistry {
+
+    public static final class Location {
+        public final BlockPos pos;
+        public final Level level;
+
+        public Location(BlockPos pos, Level level) {
+            this.pos = pos;
+            this.level = level;
+        }
+    }
+
+    public static final class Entry {
+        public final int id;
+        private volatile Location location;
+        private volatile boolean running;
+
+        private Entry(int id, Location location) {
+            this.id = id;
+            this.location = location;
+        }
+
+        public Location getLocation() {
+            return location;
+        }
+
+        public boolean isRunning() {
+            return running;
+        }
+    }
+
+    private static final Int2ObjectOpenHashMap<Entry> ENTRIES = new Int2ObjectOpenHashMap<>();
+
+    // A computer that is created again under the same id (chunk reload, turtle rebuilt after a move)
+    // replaces the old entry; the old API's shutdown then leaves the new one alone.
+    public static Entry register(int id, BlockPos pos, Level level) {
+        Entry entry = new Entry(id, new Location(pos, level));
+        synchronized (ENTRIES) {
+            ENTRIES.put(id, entry);
+        }
+        return entry;
+    }
+
+    public static void start(Entry entry) {
+        entry.running = true;
+        synchronized (ENTRIES) {
+            ENTRIES.putIfAbsent(entry.id, entry);
+        }
+    }
+
+    public static void remove(Entry entry) {
+        entry.running = false;
+        synchronized (ENTRIES) {
+            ENTRIES.remove(entry.id, entry);
+        }
+    }
+
+    public static void move(int id, BlockPos pos, Level level) {
+        Entry entry = get(id);
+        if (entry != null) {
+            entry.location = new Location(pos, level);
+        }
+    }
+
+    public static Entry get(int id) {
+        synchronized (ENTRIES) {
+            return ENTRIES.get(id);
+        }
+    }
+
+    public static int size() {
+        synchronized (ENTRIES) {
+            return ENTRIES.size();
+        }
+    }
+}
@@ -1,63 +1,65 @@
 package com.example.cryptography;
 
-import com.google.gson.Gson;
+import dan200.computercraft.api.lua.IArguments;
 import dan200.computercraft.api.lua.ILuaAPI;
+import dan200.computercraft.api.lua.LuaException;
 import dan200.computercraft.api.lua.LuaFunction;
-import dan200.computercraft.client.render.ItemMapLikeRenderer;
-import dan200.computercraft.core.computer.Computer;
-import dan200.computercraft.core.computer.mainthread.MainThread;
-import dan200.computercraft.core.computer.mainthread.MainThreadScheduler;
+import dan200.computercraft.api.lua.MethodResult;
 import dan200.computercraft.shared.computer.core.ServerComputer;
-import net.minecraft.client.Minecraft;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrays;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.Reference2IntOpenHashMap;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
 import net.minecraft.core.BlockPos;
-import net.minecraft.network.chat.Component;
+import net.minecraft.core.SectionPos;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
 import net.minecraft.server.level.ServerLevel;
 import net.minecraft.server.level.ServerPlayer;
 import net.minecraft.world.entity.*;
 import net.minecraft.world.entity.monster.Monster;
-import net.minecraft.world.entity.monster.Zombie;
 import net.minecraft.world.entity.player.Player;
 import net.minecraft.world.level.Level;
-import net.minecraft.world.level.LightLayer;
+import net.minecraft.world.level.block.Block;
+import net.minecraft.world.level.block.Blocks;
 import net.minecraft.world.level.block.state.BlockState;
 import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
 import net.minecraft.world.level.entity.LevelEntityGetter;
 import net.minecraft.world.level.levelgen.Heightmap;
 import net.minecraft.world.phys.AABB;
 import net.minecraft.world.phys.Vec3;
-import net.minecraftforge.common.util.ItemStackMap;
-import net.minecraftforge.server.ServerLifecycleHooks;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.joml.Vector3d;
 import org.joml.primitives.AABBdc;
 import org.joml.primitives.AABBic;
-import org.valkyrienskies.core.api.ships.QueryableShipData;
 import org.valkyrienskies.core.api.ships.ServerShip;
 import org.valkyrienskies.core.api.ships.Ship;
-import org.valkyrienskies.core.impl.shadow.B;
 import org.valkyrienskies.mod.common.VSGameUtilsKt;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.BiConsumer;
-import java.util.stream.IntStream;
-
-import static com.example.cryptography.Cryptography.ComputerPosMapper;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 public class CoordinateAPI implements ILuaAPI {
     private BlockPos pos;
     private final int id;
-    private final Level level;
+    private Level level;
     public Map<Map<String, Integer>, Map<String, Object>> tmpMap;
-    private Computer computer;
+    private final ComputerRegistry.Entry entry;
+    private ComputerPose pose;
+    private EntityWatcher.Watch watch;
+    private ServerComputer computer;
     private Thread t = null;
-    public CoordinateAPI(BlockPos pos, int id, Level level, Computer computer) {
-        this.pos = pos;
-        this.id = id;
-        this.level = level;
+    private static final AtomicInteger NEXT_PATH_JOB = new AtomicInteger();
+    public CoordinateAPI(ComputerRegistry.Entry entry, ServerComputer computer) {
+        ComputerRegistry.Location location = entry.getLocation();
+        this.pos = location.pos;
+        this.id = entry.id;
+        this.level = location.level;
+        this.entry = entry;
         this.computer = computer;
     }
 
@@ -66,9 +68,24 @@ public class CoordinateAPI implements ILuaAPI {
         return new String[]{"coord", "coordinate"};
     }
 
+    @Override
+    public void startup() {
+        ComputerRegistry.start(entry);
+    }
+
     @Override
     public void update() {
-        this.pos = ComputerPosMapper.get(id);
+        ComputerRegistry.Location location = entry.getLocation();
+        this.pos = location.pos;
+        this.level = location.level;
+    }
+
+    @Override
+    public void shutdown() {
+        TopographyScanner.cancelAll(id);
+        EntityWatcher.stop(watch);
+        watch = null;
+        ComputerRegistry.remove(entry);
     }
 
     @LuaFunction
@@ -77,35 +94,369 @@ public class CoordinateAPI implements ILuaAPI {
     }
 
     @LuaFunction
-    public final String getBlock(int x, int y, int z) {
-        BlockPos bpos = new BlockPos(x, y, z);
-        BlockState bs = level.getBlockState(bpos);
-        return bs.getBlock().getDescriptionId().replace("block.", "").replace(".", ":");
+    public final MethodResult getBlock(int x, int y, int z) throws LuaException {
+        return read(key("getBlock", x, y, z), () -> {
+            BlockState bs = loadedBlockState(new BlockPos(x, y, z));
+            return BlockFields.name(bs);
+        });
+    }
+
+    @LuaFunction
+    public final MethodResult getBlocks(IArguments args) throws LuaException {
+        List<Map<?, ?>> positions = LuaArgs.getTables(args.getTable(0));
+        String[] fields = args.optTable(1).isPresent() ? BlockFields.parse(args.getTable(1), true) : null;
+        boolean withSky = fields != null && Arrays.asList(fields).contains(BlockFields.SKY);
+        int n = positions.size();
+        if (n > Cryptography.MAX_BATCH_BLOCKS) {
+            throw new LuaException("Too many positions, at most " + Cryptography.MAX_BATCH_BLOCKS);
+        }
+        int[] xs = new int[n];
+        int[] ys = new int[n];
+        int[] zs = new int[n];
+        long[] sections = new long[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            Map<?, ?> position = positions.get(i);
+            xs[i] = LuaArgs.getInt(position, "x", 1);
+            ys[i] = LuaArgs.getInt(position, "y", 2);
+            zs[i] = LuaArgs.getInt(position, "z", 3);
+            sections[i] = SectionPos.asLong(xs[i] >> 4, ys[i] >> 4, zs[i] >> 4);
+            order[i] = i;
+        }
+        // Visit the positions section by section so each chunk and section is looked up once.
+        IntArrays.quickSort(order, (a, b) -> Long.compare(sections[a], sections[b]));
+
+        return read(null, () -> {
+            Object[] results = new Object[n];
+            LevelChunk chunk = null;
+            int chunkX = 0;
+            int chunkZ = 0;
+            LevelChunkSection section = null;
+            long current = 0;
+            BlockPos.MutableBlockPos mpos = new BlockPos.MutableBlockPos();
+            for (int k = 0; k < n; k++) {
+                int i = order[k];
+                if (k == 0 || sections[i] != current) {
+                    current = sections[i];
+                    if (k == 0 || chunkX != xs[i] >> 4 || chunkZ != zs[i] >> 4) {
+                        chunkX = xs[i] >> 4;
+                        chunkZ = zs[i] >> 4;
+                        chunk = loadedChunk(chunkX, chunkZ);
+                    }
+                    section = chunk == null ? null : getSection(chunk, ys[i] >> 4);
+                }
+                BlockState state = section == null ? Blocks.VOID_AIR.defaultBlockState() : section.getBlockState(xs[i] & 15, ys[i] & 15, zs[i] & 15);
+                if (fields == null) {
+                    results[i] = BlockFields.name(state);
+                } else {
+                    Map<String, Object> map = BlockFields.describe(fields, state);
+                    if (withSky) {
+                        map.put(BlockFields.SKY, chunk != null && level.canSeeSky(mpos.set(xs[i], ys[i], zs[i])));
+                    }
+                    results[i] = map;
+                }
+            }
+            return Arrays.asList(results);
+        });
+    }
+
+    @LuaFunction
+    public final MethodResult getBlockRegion(IArguments args) throws LuaException {
+        int minX = Math.min(args.getInt(0), args.getInt(3));
+        int maxX = Math.max(args.getInt(0), args.getInt(3));
+        int minY = Math.min(args.getInt(1), args.getInt(4));
+        int maxY = Math.max(args.getInt(1), args.getInt(4));
+        int minZ = Math.min(args.getInt(2), args.getInt(5));
+        int maxZ = Math.max(args.getInt(2), args.getInt(5));
+        String[] fields = args.optTable(6).isPresent() ? BlockFields.parse(args.getTable(6), false) : null;
+        int sizeX = maxX - minX + 1;
+        int sizeY = maxY - minY + 1;
+        int sizeZ = maxZ - minZ + 1;
+        if ((long) sizeX * sizeY * sizeZ > Cryptography.MAX_REGION_VOLUME) {
+            throw new LuaException("Region too large, at most " + Cryptography.MAX_REGION_VOLUME + " blocks");
+        }
+
+        // Like a chunk section: every distinct description goes in the palette once and each block
+        // stores the (1-based) palette index, in y, z, x order.
+        int[] indices = new int[sizeX * sizeY * sizeZ];
+        List<Object> palette = new ArrayList<>();
+        Reference2IntOpenHashMap<BlockState> stateIndex = new Reference2IntOpenHashMap<>();
+        Object2IntOpenHashMap<Object> valueIndex = new Object2IntOpenHashMap<>();
+        stateIndex.defaultReturnValue(0);
+        valueIndex.defaultReturnValue(0);
+        int chunksX = (maxX >> 4) - (minX >> 4) + 1;
+        int chunksZ = (maxZ >> 4) - (minZ >> 4) + 1;
+        // One chunk column per step.
+        return readSteps(key("getBlockRegion", minX, minY, minZ, maxX, maxY, maxZ, fields == null ? null : Arrays.asList(fields)), WorldReadBatcher.steps(chunksX * chunksZ, c -> {
+            int cx = (minX >> 4) + c % chunksX;
+            int cz = (minZ >> 4) + c / chunksX;
+            LevelChunk chunk = loadedChunk(cx, cz);
+            int startX = Math.max(minX, cx << 4);
+            int endX = Math.min(maxX, (cx << 4) + 15);
+            int startZ = Math.max(minZ, cz << 4);
+            int endZ = Math.min(maxZ, (cz << 4) + 15);
+            for (int sy = minY >> 4; sy <= maxY >> 4; sy++) {
+                LevelChunkSection section = chunk == null ? null : getSection(chunk, sy);
+                int startY = Math.max(minY, sy << 4);
+                int endY = Math.min(maxY, (sy << 4) + 15);
+                for (int by = startY; by <= endY; by++) {
+                    for (int bz = startZ; bz <= endZ; bz++) {
+                        for (int bx = startX; bx <= endX; bx++) {
+                            BlockState state = section == null ? Blocks.VOID_AIR.defaultBlockState() : section.getBlockState(bx & 15, by & 15, bz & 15);
+                            int p = stateIndex.getInt(state);
+                            if (p == 0) {
+                                Object value = fields == null ? BlockFields.name(state) : BlockFields.describe(fields, state);
+                                p = valueIndex.getInt(value);
+                                if (p == 0) {
+                                    palette.add(value);
+                                    p = palette.size();
+                                    valueIndex.put(value, p);
+                                }
+                                stateIndex.put(state, p);
+                            }
+                            indices[((by - minY) * sizeZ + (bz - minZ)) * sizeX + (bx - minX)] = p;
+                        }
+                    }
+                }
+            }
+        }, () -> {
+            Map<String, Object> result = new HashMap<>();
+            result.put("x", minX);
+            result.put("y", minY);
+            result.put("z", minZ);
+            result.put("sizeX", sizeX);
+            result.put("sizeY", sizeY);
+            result.put("sizeZ", sizeZ);
+            result.put("palette", palette);
+            result.put("indices", IntArrayList.wrap(indices));
+            return result;
+        }));
+    }
+
+    @LuaFunction
+    public final MethodResult findBlocks(IArguments args) throws LuaException {
+        Map<?, ?> region = args.getTable(0);
+        int minX = Math.min(LuaArgs.getInt(region, "x1", 1), LuaArgs.getInt(region, "x2", 4));
+        int maxX = Math.max(LuaArgs.getInt(region, "x1", 1), LuaArgs.getInt(region, "x2", 4));
+        int minY = Math.min(LuaArgs.getInt(region, "y1", 2), LuaArgs.getInt(region, "y2", 5));
+        int maxY = Math.max(LuaArgs.getInt(region, "y1", 2), LuaArgs.getInt(region, "y2", 5));
+        int minZ = Math.min(LuaArgs.getInt(region, "z1", 3), LuaArgs.getInt(region, "z2", 6));
+        int maxZ = Math.max(LuaArgs.getInt(region, "z1", 3), LuaArgs.getInt(region, "z2", 6));
+        if (maxX - minX >= Cryptography.MAX_SCOPE || maxY - minY >= Cryptography.MAX_SCOPE || maxZ - minZ >= Cryptography.MAX_SCOPE) {
+            throw new LuaException("Region too large, at most " + Cryptography.MAX_SCOPE + " blocks per side");
+        }
+        Set<Block> targets = new ReferenceOpenHashSet<>();
+        for (String blockId : LuaArgs.getStrings(args.getTable(1))) {
+            ResourceLocation location = ResourceLocation.tryParse(blockId);
+            Optional<Block> block = location == null ? Optional.empty() : BuiltInRegistries.BLOCK.getOptional(location);
+            if (block.isEmpty()) {
+                throw new LuaException("Unknown block " + blockId);
+            }
+            targets.add(block.get());
+        }
+        int limit = args.optInt(2, Cryptography.FIND_BLOCKS_PAGE_SIZE);
+        if (limit < 1 || limit > Cryptography.FIND_BLOCKS_PAGE_SIZE) {
+            throw new LuaException("Limit must be between 1 and " + Cryptography.FIND_BLOCKS_PAGE_SIZE);
+        }
+        int minCx = minX >> 4, minCz = minZ >> 4, minSy = minY >> 4;
+        int chunksZ = (maxZ >> 4) - minCz + 1;
+        int sectionsY = (maxY >> 4) - minSy + 1;
+        long total = (long) ((maxX >> 4) - minCx + 1) * chunksZ * sectionsY;
+        // The cursor is the section index (cx, cz, sy order) shifted left 12 bits plus the block offset
+        // inside that section's part of the region, so a call can stop in the middle of a section.
+        long cursor = args.optLong(3, 0);
+        if (cursor < 0 || (cursor >> 12) > total) {
+            throw new LuaException("Invalid cursor");
+        }
+
+        Predicate<BlockState> matcher = state -> targets.contains(state.getBlock());
+        // One bounded page per call: it stops at `limit` hits or after FIND_BLOCKS_SECTIONS_PER_CALL
+        // scanned sections, and hands back a cursor for the caller to continue from.
+        return read(null, () -> {
+            List<Map<String, Object>> hits = new ArrayList<>();
+            int scanned = 0;
+            int skipped = 0;
+            long next = total << 12;
+            search:
+            for (long s = cursor >> 12; s < total; s++) {
+                if (scanned >= Cryptography.FIND_BLOCKS_SECTIONS_PER_CALL || scanned + skipped >= Cryptography.FIND_BLOCKS_VISITS_PER_CALL) {
+                    next = s << 12;
+                    break;
+                }
+                int sy = minSy + (int) (s % sectionsY);
+                int cz = minCz + (int) (s / sectionsY % chunksZ);
+                int cx = minCx + (int) (s / sectionsY / chunksZ);
+                LevelChunk chunk = loadedChunk(cx, cz);
+                if (chunk == null) {
+                    skipped++;
+                    continue;
+                }
+                LevelChunkSection section = getSection(chunk, sy);
+                // The palette lists every state a section may hold, so most sections are ruled out
+                // without looking at a single block.
+                if (section == null || section.hasOnlyAir() || !section.maybeHas(matcher)) {
+                    skipped++;
+                    continue;
+                }
+                scanned++;
+                int startX = Math.max(minX, cx << 4);
+                int startY = Math.max(minY, sy << 4);
+                int startZ = Math.max(minZ, cz << 4);
+                int width = Math.min(maxX, (cx << 4) + 15) - startX + 1;
+                int height = Math.min(maxY, (sy << 4) + 15) - startY + 1;
+                int depth = Math.min(maxZ, (cz << 4) + 15) - startZ + 1;
+                int volume = width * height * depth;
+                for (int o = s == cursor >> 12 ? (int) (cursor & 4095) : 0; o < volume; o++) {
+                    int bx = startX + o % width;
+                    int bz = startZ + o / width % depth;
+                    int by = startY + o / (width * depth);
+                    BlockState state = section.getBlockState(bx & 15, by & 15, bz & 15);
+                    if (targets.contains(state.getBlock())) {
+                        Map<String, Object> hit = new HashMap<>();
+                        hit.put("x", bx);
+                        hit.put("y", by);
+                        hit.put("z", bz);
+                        hit.put("id", BlockFields.name(state));
+                        hits.add(hit);
+                        if (hits.size() >= limit) {
+                            next = o + 1 < volume ? (s << 12) | (o + 1) : (s + 1) << 12;
+                            break search;
+                        }
+                    }
+                }
+            }
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("hits", hits);
+            result.put("count", hits.size());
+            result.put("scannedSections", scanned);
+            result.put("skippedSections", skipped);
+            if (next < total << 12) {
+                result.put("cursor", next);
+            }
+            return result;
+        });
     }
 
     @LuaFunction
-    public final boolean canSeeSky(int x, int y, int z){
-        return level.canSeeSky(new BlockPos(x, y, z));
+    public final MethodResult findPath(IArguments args) throws LuaException {
+        Map<?, ?> fromTable = args.getTable(0);
+        Map<?, ?> toTable = args.getTable(1);
+        Map<?, ?> options = args.optTable(2).orElse(Collections.emptyMap());
+        BlockPos from = new BlockPos(LuaArgs.getInt(fromTable, "x", 1), LuaArgs.getInt(fromTable, "y", 2), LuaArgs.getInt(fromTable, "z", 3));
+        BlockPos to = new BlockPos(LuaArgs.getInt(toTable, "x", 1), LuaArgs.getInt(toTable, "y", 2), LuaArgs.getInt(toTable, "z", 3));
+        boolean async = Boolean.TRUE.equals(options.get("async"));
+        boolean shipFrame = "ship".equals(options.get("frame"));
+        if (shipFrame) {
+            // Searches the ship's own blocks: world coordinates are moved into the shipyard, and the
+            // path comes back in shipyard coordinates, the same frame getAbsoluteCoordinates uses.
+            Ship ship = getShip();
+            if (ship == null) {
+                throw new LuaException("Computer is not on a ship");
+            }
+            from = toShipyard(ship, from);
+            to = toShipyard(ship, to);
+        }
+        if (from.distManhattan(to) > Cryptography.MAX_SCOPE) {
+            throw new LuaException("Path too long, at most " + Cryptography.MAX_SCOPE + " blocks apart");
+        }
+        int nodeLimit = async ? Cryptography.PATHFINDING_MAX_NODES_ASYNC : Cryptography.PATHFINDING_MAX_NODES;
+        int maxNodes = options.get("maxNodes") instanceof Number ? Math.min(((Number) options.get("maxNodes")).intValue(), nodeLimit) : nodeLimit;
+        int digCost = options.get("digCost") instanceof Number ? Math.max(0, ((Number) options.get("digCost")).intValue()) : 4;
+        PathFinder finder = new PathFinder(level, !Boolean.FALSE.equals(options.get("replaceable")), Boolean.TRUE.equals(options.get("nonSolid")), Boolean.TRUE.equals(options.get("dig")), digCost);
+        String frame = shipFrame ? "ship" : "world";
+
+        BlockPos start = from;
+        BlockPos goal = to;
+        if (!async) {
+            // Short searches run whole on the server thread, copying chunks as they are reached.
+            return read(null, () -> pathResult(finder.search(start, goal, maxNodes), finder.getExpanded(), frame));
+        }
+        if (computer == null) {
+            throw new LuaException("No computer to deliver the path to");
+        }
+        long columns = finder.setArea(start, goal, Cryptography.PATHFINDING_SNAPSHOT_MARGIN);
+        if (columns > Cryptography.PATHFINDING_MAX_SNAPSHOT_CHUNKS) {
+            throw new LuaException("Path area too large for an async search, at most " + Cryptography.PATHFINDING_MAX_SNAPSHOT_CHUNKS + " chunks");
+        }
+        ServerComputer target = computer;
+        // The area is copied on the server thread first, one chunk column per step; the background
+        // search then only reads the copy.
+        return readSteps(null, WorldReadBatcher.steps((int) columns, finder::copyColumn, () -> {
+            finder.freeze();
+            int job = NEXT_PATH_JOB.incrementAndGet();
+            boolean queued = BackgroundTasks.WORLD.submit(() -> {
+                Map<String, Object> result;
+                try {
+                    result = pathResult(finder.search(start, goal, maxNodes), finder.getExpanded(), frame);
+                } catch (RuntimeException e) {
+                    result = pathResult(null, finder.getExpanded(), frame);
+                    result.put("error", e.toString());
+                }
+                target.queueEvent("ComputerPathFound", new Object[]{job, result});
+            });
+            if (!queued) {
+                throw new LuaException("Too many path searches running");
+            }
+            return job;
+        }));
+    }
+
+    private static Map<String, Object> pathResult(Node end, int expanded, String frame) {
+        List<Map<String, Integer>> path = new ArrayList<>();
+        for (Node node = end; node != null; node = node.parent) {
+            Map<String, Integer> step = new HashMap<>();
+            step.put("x", node.x);
+            step.put("y", node.y);
+            step.put("z", node.z);
+            path.add(step);
+        }
+        Collections.reverse(path);
+        Map<String, Object> result = new HashMap<>();
+        result.put("found", end != null);
+        result.put("path", path);
+        result.put("expanded", expanded);
+        result.put("frame", frame);
+        return result;
+    }
+
+    private static BlockPos toShipyard(Ship ship, BlockPos worldPos) {
+        Vector3d v = ship.getTransform().getWorldToShip().transformPosition(new Vector3d(worldPos.getX() + 0.5, worldPos.getY() + 0.5, worldPos.getZ() + 0.5));
+        return new BlockPos((int) Math.floor(v.x), (int) Math.floor(v.y), (int) Math.floor(v.z));
+    }
+
+    private static LevelChunkSection getSection(LevelChunk chunk, int sectionY) {
+        int index = chunk.getSectionIndexFromSectionY(sectionY);
+        if (index < 0 || index >= chunk.getSections().length) {
+            return null;
+        }
+        return chunk.getSection(index);
     }
 
     @LuaFunction
-    public final boolean getBlockIsReplaceable(int x, int y, int z) {
-        BlockPos bpos = new BlockPos(x, y, z);
-        BlockState bs = level.getBlockState(bpos);
-        return bs.canBeReplaced();
+    public final MethodResult canSeeSky(int x, int y, int z) throws LuaException {
+        return read(key("canSeeSky", x, y, z), () -> loadedCanSeeSky(new BlockPos(x, y, z)));
     }
 
     @LuaFunction
-    public final boolean getBlockIsSolid(int x, int y, int z) {
-        BlockPos bpos = new BlockPos(x, y, z);
-        BlockState bs = level.getBlockState(bpos);
-        return bs.isSolid();
+    public final MethodResult getBlockIsReplaceable(int x, int y, int z) throws LuaException {
+        return read(key("getBlockIsReplaceable", x, y, z), () -> {
+            BlockState bs = loadedBlockState(new BlockPos(x, y, z));
+            return bs.canBeReplaced();
+        });
     }
 
     @LuaFunction
-    public final boolean isBlockLoaded(int x, int y, int z) {
-        BlockPos bpos = new BlockPos(x, y, z);
-        return level.isLoaded(bpos);
+    public final MethodResult getBlockIsSolid(int x, int y, int z) throws LuaException {
+        return read(key("getBlockIsSolid", x, y, z), () -> {
+            BlockState bs = loadedBlockState(new BlockPos(x, y, z));
+            return bs.isSolid();
+        });
+    }
+
+    @LuaFunction
+    public final MethodResult isBlockLoaded(int x, int y, int z) throws LuaException {
+        return read(key("isBlockLoaded", x, y, z), () -> level.isLoaded(new BlockPos(x, y, z)));
     }
 
     @LuaFunction
@@ -120,157 +471,263 @@ public class CoordinateAPI implements ILuaAPI {
     //}
 
     @LuaFunction
-    public final boolean isBlockAir(int x, int y, int z) {
-        BlockPos bpos = new BlockPos(x, y, z);
-        return level.getBlockState(bpos).isAir();
+    public final MethodResult isBlockAir(int x, int y, int z) throws LuaException {
+        return read(key("isBlockAir", x, y, z), () -> loadedBlockState(new BlockPos(x, y, z)).isAir());
     }
 
     public final @NotNull Map<String, Object> getEntitiesRaw(int scope, boolean flag){
-        boolean isAll;
-        if (scope == -1) {
-            isAll = true;
-        } else {
-            isAll = false;
+        return getEntitiesRaw(scope, flag, EntityQuery.ALL);
+    }
+
+    private @NotNull Map<String, Object> getEntitiesRaw(int scope, boolean flag, EntityQuery query){
+        EntityRead<Object> read = entityRead(scope, flag, query);
+        while (!read.step()) {
         }
+        return read.result;
+    }
 
-        Map<String, Double> cmap = getCoordinate();
-        BlockPos startBlockPos = new BlockPos((int) (Math.floor(cmap.get("x")) + scope), (int) (Math.floor(cmap.get("y")) + scope), (int) (Math.floor(cmap.get("z")) + scope));
-        BlockPos endBlockPos = new BlockPos((int) (cmap.get("x") - scope), (int) (Math.floor(cmap.get("y")) - scope), (int) (Math.floor(cmap.get("z")) - scope));
-        LevelEntityGetter<Entity> entities1 = level.getServer().getLevel(level.dimension()).getEntities();
-        List<Entity> entities = new ArrayList<>();
-        AABB aabb = new AABB(startBlockPos, endBlockPos);
-        entities1.getAll().iterator().forEachRemaining(e -> {
+    private EntityRead<Object> entityRead(int scope, boolean flag, EntityQuery query) {
+        boolean isAll = scope == -1;
+        return new EntityRead<>(scope, query.limit, (e, aabb, result) -> {
             try {
-                BlockPos p = new BlockPos((int) Math.floor(e.getX()), (int) Math.floor(e.getY() + 0.5), (int) Math.floor(e.getZ()));
-                boolean filterFlag = true;
-                if (flag){
-                    filterFlag = level.canSeeSky(p);
-                }
-                if (filterFlag){
-                    if (isAll) {
-                        entities.add(e);
-                    } else {
-                        if (p.getX() <= aabb.maxX && p.getX() >= aabb.minX && p.getY() <= aabb.maxY && p.getY() >= aabb.minY && p.getZ() <= aabb.maxZ && p.getZ() >= aabb.minZ) {
-                            entities.add(e);
-                        }
+                BlockPos p = e.pos;
+                if (isAll || (p.getX() <= aabb.maxX && p.getX() >= aabb.minX && p.getY() <= aabb.maxY && p.getY() >= aabb.minY && p.getZ() <= aabb.maxZ && p.getZ() >= aabb.minZ)) {
+                    if (query.filter.test(e.entity) && (!flag || e.canSeeSky(level))) {
+                        result.put(e.uuid, query.isProjected() ? buildEntityRecord(e.entity, e.uuid, query) : e.record());
                     }
                 }
-             } catch (RuntimeException ex) {
-             }
+            } catch (RuntimeException ex) {
+            }
         });
+    }
 
-        Map<String, Object> result = new HashMap<>();
-        entities.forEach(e -> {
-            Map<Object, Object> map = new HashMap<>();
+    @FunctionalInterface
+    private interface EntryCollector<V> {
+        void collect(EntityEntry e, AABB aabb, Map<String, V> result);
+    }
+
+    // Walks a scan's entries ENTITY_READ_STEP at a time, so a whole-dimension query over thousands of
+    // entities spreads its record building over several batcher steps.
+    private final class EntityRead<V> implements WorldReadBatcher.Steps {
+        private final int scope;
+        private final int limit;
+        private final EntryCollector<V> collector;
+        private final Map<String, V> result = new HashMap<>();
+        private AABB aabb;
+        private List<EntityEntry> entries;
+        private int next;
+
+        private EntityRead(int scope, int limit, EntryCollector<V> collector) {
+            this.scope = scope;
+            this.limit = limit;
+            this.collector = collector;
+        }
+
+        @Override
+        public boolean step() {
+            if (entries == null) {
+                aabb = getScopeAABB(getCoordinate(), scope);
+                entries = QueryCache.get(level, QueryCache.Kind.ENTITIES, isWholeDimension(scope) ? null : aabb, CoordinateAPI.this::scanEntities);
+            }
+            int end = Math.min(entries.size(), next + Cryptography.ENTITY_READ_STEP);
+            while (next < end && result.size() < limit) {
+                collector.collect(entries.get(next++), aabb, result);
+            }
+            return next >= entries.size() || result.size() >= limit;
+        }
+
+        @Override
+        public Object result() {
+            return result;
+        }
+    }
+
+    static final Set<String> ENTITY_FIELDS = Set.of("x", "y", "z", "uuid", "name", "isPlayer", "playerInfo", "type",
+            "direction", "vector", "yaw", "pitch", "raw_euler_x", "raw_euler_y", "raw_euler_z", "isLivingEntity",
+            "maxHealth", "health", "armor");
+
+    static Map<Object, Object> buildEntityRecord(Entity e, String uuid) {
+        return buildEntityRecord(e, uuid, EntityQuery.ALL);
+    }
+
+    // Builds only the fields the query asks for; the look angle, display name and type id are the costly
+    // ones and are skipped entirely when not wanted.
+    static Map<Object, Object> buildEntityRecord(Entity e, String uuid, EntityQuery query) {
+        Map<Object, Object> map = new HashMap<>();
+        if (query.wants("x")) {
             map.put("x", e.getX());
+        }
+        if (query.wants("y")) {
             map.put("y", e.getY());
+        }
+        if (query.wants("z")) {
             map.put("z", e.getZ());
-            Component preStr = e.getDisplayName();
-            String name;
-            name = preStr.getString();
-            String uuid = e.getUUID().toString();
+        }
+        if (query.wants("uuid")) {
             map.put("uuid", uuid);
-            map.put("name", name);
+        }
+        if (query.wants("name")) {
+            map.put("name", e.getDisplayName().getString());
+        }
+        if (query.wants("isPlayer")) {
+            map.put("isPlayer", e instanceof Player);
+        }
+        if (query.wants("playerInfo")) {
+            Map<String, Object> playerMapper = new HashMap<>();
             if (e instanceof Player) {
-                map.put("isPlayer", true);
-                Map<String, Object> playerMapper = new HashMap<>();
                 Player player = ((Player) e);
-                boolean isCreative = player.isCreative();
-                playerMapper.put("isCreative", isCreative);
-                boolean isSpectator = player.isSpectator();
-                playerMapper.put("isSpectator", isSpectator);
-                map.put("playerInfo", playerMapper);
-            } else {
-                map.put("isPlayer", false);
-                map.put("playerInfo", new HashMap<>());
+                playerMapper.put("isCreative", player.isCreative());
+                playerMapper.put("isSpectator", player.isSpectator());
             }
+            map.put("playerInfo", playerMapper);
+        }
+        if (query.wants("type")) {
             String type = e.getType().getDescriptionId().replace("entity.", "").replace(".", ":");
             map.put("type", type);
-            String direc = e.getMotionDirection().getSerializedName();
-            map.put("direction", direc);
+        }
+        if (query.wants("direction")) {
+            map.put("direction", e.getMotionDirection().getSerializedName());
+        }
+        if (query.wants("vector")) {
             Vec3 v3 = e.getDeltaMovement();
             Map<String, Double> vector = new HashMap<>();
             vector.put("x", v3.x());
             vector.put("y", v3.y());
             vector.put("z", v3.z());
             map.put("vector", vector);
-            double yaw = Math.atan2(e.getLookAngle().x, e.getLookAngle().z) * 180 / Math.PI;
-            if (yaw > 89.9 || yaw < -89.9) {
-                yaw = Math.atan2(e.getLookAngle().y, e.getLookAngle().z) * 180 / Math.PI;
-            }
-            map.put("yaw", yaw);
-            map.put("pitch", Math.asin(e.getLookAngle().y) * 180 / Math.PI);
-            map.put("raw_euler_x", e.getLookAngle().x);
-            map.put("raw_euler_y", e.getLookAngle().y);
-            map.put("raw_euler_z", e.getLookAngle().z);
-            if (e instanceof LivingEntity) {
-                map.put("isLivingEntity", true);
-                LivingEntity mob = (LivingEntity) e;
+        }
+        if (query.wantsAny("yaw", "pitch", "raw_euler_x", "raw_euler_y", "raw_euler_z")) {
+            Vec3 look = e.getLookAngle();
+            if (query.wants("yaw")) {
+                double yaw = Math.atan2(look.x, look.z) * 180 / Math.PI;
+                if (yaw > 89.9 || yaw < -89.9) {
+                    yaw = Math.atan2(look.y, look.z) * 180 / Math.PI;
+                }
+                map.put("yaw", yaw);
+            }
+            if (query.wants("pitch")) {
+                map.put("pitch", Math.asin(look.y) * 180 / Math.PI);
+            }
+            if (query.wants("raw_euler_x")) {
+                map.put("raw_euler_x", look.x);
+            }
+            if (query.wants("raw_euler_y")) {
+                map.put("raw_euler_y", look.y);
+            }
+            if (query.wants("raw_euler_z")) {
+                map.put("raw_euler_z", look.z);
+            }
+        }
+        if (query.wants("isLivingEntity")) {
+            map.put("isLivingEntity", e instanceof LivingEntity);
+        }
+        if (e instanceof LivingEntity) {
+            LivingEntity mob = (LivingEntity) e;
+            if (query.wants("maxHealth")) {
                 map.put("maxHealth", mob.getMaxHealth());
+            }
+            if (query.wants("health")) {
                 map.put("health", mob.getHealth());
+            }
+            if (query.wants("armor")) {
                 map.put("armor", mob.getArmorValue());
-            } else {
-                map.put("isLivingEntity", false);
             }
-            result.put(uuid, map);
-        });
-        return result;
+        }
+        return map;
+    }
+
+    @LuaFunction
+    public final MethodResult getEntities(IArguments args) throws LuaException {
+        return readEntities(args.getInt(0), true, EntityQuery.parse(args, 1, ENTITY_FIELDS));
     }
 
     @LuaFunction
-    public final @NotNull Map<String, Object> getEntities(int scope) {
-        return getEntitiesRaw(scope, true);
+    public final MethodResult getEntitiesAll(IArguments args) throws LuaException {
+        return readEntities(args.getInt(0), false, EntityQuery.parse(args, 1, ENTITY_FIELDS));
     }
 
+    // Option tables do not compare equal, so only plain queries are coalesced.
+    private MethodResult readEntities(int scope, boolean flag, EntityQuery query) throws LuaException {
+        Object key = query == EntityQuery.ALL ? key("getEntities", pos, scope, flag) : null;
+        return readSteps(key, entityRead(scope, flag, query));
+    }
+
+    // Looks the entity up in the level's UUID index instead of scanning. Entities that are elsewhere,
+    // unloaded or further than the configured entityLookupMaxRange from the computer give nil.
     @LuaFunction
-    public final @NotNull Map<String, Object> getEntitiesAll(int scope) {
-        return getEntitiesRaw(scope, false);
+    public final MethodResult getEntity(IArguments args) throws LuaException {
+        UUID uuid = parseUuid(args.getString(0));
+        EntityQuery query = EntityQuery.parse(args, 1, ENTITY_FIELDS);
+        return read(query == EntityQuery.ALL ? key("getEntity", pos, uuid) : null, () -> {
+            Entity entity = lookupEntity(uuid, query);
+            return entity == null ? null : buildEntityRecord(entity, uuid.toString(), query);
+        });
     }
 
     @LuaFunction
-    public final int getBlockExplosionResistance(int x, int y, int z) {
-        BlockPos bpos = new BlockPos(x, y, z);
-        BlockState bs = level.getBlockState(bpos);
-        return (int) Math.floor(bs.getBlock().getExplosionResistance());
+    public final MethodResult getEntitiesByUuid(IArguments args) throws LuaException {
+        List<String> ids = LuaArgs.getStrings(args.getTable(0));
+        if (ids.size() > Cryptography.ENTITY_LOOKUP_MAX_BATCH) {
+            throw new LuaException("Too many entities (max " + Cryptography.ENTITY_LOOKUP_MAX_BATCH + ")");
+        }
+        List<UUID> uuids = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            uuids.add(parseUuid(id));
+        }
+        EntityQuery query = EntityQuery.parse(args, 1, ENTITY_FIELDS);
+        return read(null, () -> {
+            Map<String, Object> result = new HashMap<>();
+            for (int i = 0; i < uuids.size(); i++) {
+                Entity entity = lookupEntity(uuids.get(i), query);
+                if (entity != null) {
+                    result.put(ids.get(i), buildEntityRecord(entity, uuids.get(i).toString(), query));
+                }
+            }
+            return result;
+        });
+    }
+
+    private Entity lookupEntity(UUID uuid, EntityQuery query) {
+        ServerLevel serverLevel = level.getServer().getLevel(level.dimension());
+        Entity entity = serverLevel == null ? null : serverLevel.getEntity(uuid);
+        if (entity == null || !entity.isAlive() || !query.filter.test(entity)) {
+            return null;
+        }
+        ComputerPose pose = pose();
+        double range = CryptographyConfig.ENTITY_LOOKUP_MAX_RANGE.get();
+        return entity.distanceToSqr(pose.x, pose.y, pose.z) <= range * range ? entity : null;
+    }
+
+    private static UUID parseUuid(String id) throws LuaException {
+        try {
+            return UUID.fromString(id);
+        } catch (IllegalArgumentException e) {
+            throw new LuaException("Invalid UUID " + id);
+        }
+    }
+
+    @LuaFunction
+    public final MethodResult getBlockExplosionResistance(int x, int y, int z) throws LuaException {
+        return read(key("getBlockExplosionResistance", x, y, z), () -> {
+            BlockState bs = loadedBlockState(new BlockPos(x, y, z));
+            return (int) Math.floor(bs.getBlock().getExplosionResistance());
+        });
     }
 
     public final Map<String, Object> getShipsRaw(int scope, boolean flag){
+        return getShipsRaw(scope, flag, false);
+    }
+
+    private Map<String, Object> getShipsRaw(int scope, boolean flag, boolean intersect) {
         if (scope > Cryptography.MAX_SCOPE) {
             return new HashMap<>();
         }
-        Map<String, Double> cmap = getCoordinate();
-        BlockPos startBlockPos = new BlockPos((int) (Math.floor(cmap.get("x")) + scope), (int) (Math.floor(cmap.get("y")) + scope), (int) (Math.floor(cmap.get("z")) + scope));
-        BlockPos endBlockPos = new BlockPos((int) (cmap.get("x") - scope), (int) (Math.floor(cmap.get("y")) - scope), (int) (Math.floor(cmap.get("z")) - scope));
-        QueryableShipData<Ship> qsd = VSGameUtilsKt.getAllShips(level);
+        AABB aabb = getScopeAABB(getCoordinate(), scope);
         Map<String, Object> mapper = new HashMap<>();
         try {
-            qsd.iterator().forEachRemaining(e -> {
-                AABBdc p = e.getWorldAABB();
-                double[] c = getAABBdcCenter(p);
-                AABB aabb = new AABB(startBlockPos, endBlockPos);
-                BlockPos blockPos = new BlockPos((int) Math.floor(c[0]), (int) Math.floor(c[1]), (int) Math.floor(c[2]));
-
-                boolean filterFlag = true;
-                if (flag){
-                    filterFlag = level.canSeeSky(blockPos);
-                }
-
-                if (filterFlag && aabb.contains(c[0], c[1], c[2])){
-                    Map<String, Object> attr = new HashMap<>();
-                    attr.put("id", e.getId());
-                    attr.put("slug", e.getSlug());
-                    attr.put("dimension", e.getChunkClaimDimension());
-                    attr.put("x", c[0]);
-                    attr.put("y", c[1]);
-                    attr.put("z", c[2]);
-                    AABBdc box = e.getWorldAABB();
-                    attr.put("max_x", box.maxX());
-                    attr.put("max_y", box.maxY());
-                    attr.put("max_z", box.maxZ());
-                    attr.put("min_x", box.minX());
-                    attr.put("min_y", box.minY());
-                    attr.put("min_z", box.minZ());
-                    mapper.put(String.valueOf(e.getId()), attr);
+            shipIndex().query(aabb, intersect, e -> {
+                if (!flag || e.canSeeSky(level)) {
+                    mapper.put(e.key, e.record());
                 }
             });
         } catch (RuntimeException ex) {
@@ -278,14 +735,30 @@ public class CoordinateAPI implements ILuaAPI {
         return mapper;
     }
 
+    private ShipIndex shipIndex() {
+        return QueryCache.getShared(level, QueryCache.Kind.SHIPS, ShipIndex::build);
+    }
+
+    // With intersect set, ships whose bounds reach into the scope count, not only those centred in it.
+    // The index and the sky checks read the world, so these go through the batcher like block reads.
     @LuaFunction
-    public final Map<String, Object> getShips(int scope) {
-        return getShipsRaw(scope, true);
+    public final MethodResult getShips(int scope, Optional<Boolean> intersect) throws LuaException {
+        boolean overlap = intersect.orElse(false);
+        return read(key("getShips", pos, scope, overlap), () -> getShipsRaw(scope, true, overlap));
     }
 
     @LuaFunction
-    public final Map<String, Object> getShipsAll(int scope) {
-        return getShipsRaw(scope, false);
+    public final MethodResult getShipsAll(int scope, Optional<Boolean> intersect) throws LuaException {
+        boolean overlap = intersect.orElse(false);
+        return read(key("getShipsAll", pos, scope, overlap), () -> getShipsRaw(scope, false, overlap));
+    }
+
+    @LuaFunction
+    public final MethodResult getShipById(long id) throws LuaException {
+        return read(key("getShipById", id), () -> {
+            ShipIndex.Entry entry = shipIndex().get(id);
+            return entry == null ? null : entry.record();
+        });
     }
 
     @LuaFunction
@@ -302,12 +775,18 @@ public class CoordinateAPI implements ILuaAPI {
         return map;
     }
 
+    private ComputerPose pose() {
+        ComputerPose current = ComputerPose.of(pose, pos, level);
+        pose = current;
+        return current;
+    }
+
     private boolean isOnShip() {
-        return VSGameUtilsKt.getShipManagingPos(level, pos) != null;
+        return pose().ship != null;
     }
 
     private Ship getShip() {
-        return VSGameUtilsKt.getShipManagingPos(level, pos);
+        return pose().ship;
     }
 
     private double[] getAABBdcCenter(AABBdc aabb) {
@@ -331,30 +810,23 @@ public class CoordinateAPI implements ILuaAPI {
     }
 
     private Map<String, Double> getCoordinate() {
-        Map<String, Double> map = new HashMap<>();
-        if (isOnShip()) {
-            Ship ship = getShip();
-            Vector3d v3d = VSGameUtilsKt.toWorldCoordinates(ship, pos);
-            map.put("x", v3d.x);
-            map.put("y", v3d.y);
-            map.put("z", v3d.z);
-        } else {
-            map.put("x", (double) pos.getX());
-            map.put("y", (double) pos.getY());
-            map.put("z", (double) pos.getZ());
-        }
-        return map;
+        return pose().coordinate;
     }
 
     @LuaFunction
     public final String getSlug() {
-        if (isOnShip()) {
-            Ship ship = getShip();
+        Ship ship = getShip();
+        if (ship != null) {
             return ship.getSlug();
         }
         return "NoSlug";
     }
 
+    @LuaFunction
+    public final Map<String, Object> getPose() {
+        return pose().toLua();
+    }
+
     @LuaFunction
     public final void setSlug(String name) {
         if (isOnShip()) {
@@ -366,121 +838,426 @@ public class CoordinateAPI implements ILuaAPI {
     }
 
     @LuaFunction
-    public final @NotNull Map<String, Object> getPlayers(){
-        List<ServerPlayer> players = level.getServer().getLevel(level.dimension()).getPlayers(LivingEntity::isAlive);
+    public final MethodResult getPlayers(IArguments args) throws LuaException {
+        EntityQuery query = EntityQuery.parse(args, 0, PLAYER_FIELDS);
+        return read(query == EntityQuery.ALL ? key("getPlayers") : null, () -> getPlayersNow(query));
+    }
+
+    private Map<String, Object> getPlayersNow(EntityQuery query) {
         Map<String, Object> result = new HashMap<>();
-        players.forEach((e) -> {
-            Map<Object, Object> map = new HashMap<>();
+        for (PlayerEntry e : QueryCache.get(level, QueryCache.Kind.PLAYERS, null, this::scanPlayers)) {
+            if (result.size() >= query.limit) {
+                break;
+            }
+            if (query.filter.test(e.player)) {
+                result.put(e.uuid, query.isProjected() ? buildPlayerRecord(e.player, e.uuid, query) : e.record());
+            }
+        }
+        return result;
+    }
+
+    // Replaces any earlier watch. Changes arrive batched in one entity_watch event per scan; an entity is
+    // reported as updated after moving minMove blocks (default ENTITY_WATCH_MIN_MOVE) or changing health.
+    @LuaFunction
+    public final boolean watchEntities(IArguments args) throws LuaException {
+        int radius = args.getInt(0);
+        if (radius <= 0 || radius > Cryptography.ENTITY_WATCH_MAX_RADIUS) {
+            throw new LuaException("Radius must be between 1 and " + Cryptography.ENTITY_WATCH_MAX_RADIUS);
+        }
+        EntityFilter filter = args.optTable(1).isPresent() ? EntityFilter.parse(args.getTable(1)) : EntityFilter.ANY;
+        double minMove = args.optFiniteDouble(2).orElse(Cryptography.ENTITY_WATCH_MIN_MOVE);
+        if (minMove < 0) {
+            throw new LuaException("minMove must not be negative");
+        }
+        if (computer == null) {
+            throw new LuaException("No computer to deliver the events to");
+        }
+        EntityWatcher.stop(watch);
+        watch = EntityWatcher.start(entry, computer, radius, filter, minMove);
+        return true;
+    }
+
+    @LuaFunction
+    public final boolean unwatchEntities() {
+        boolean watching = EntityWatcher.stop(watch);
+        watch = null;
+        return watching;
+    }
+
+    @LuaFunction
+    public final Map<String, Map<String, Long>> getQueryCacheStats() {
+        return QueryCache.getStats();
+    }
+
+    @LuaFunction
+    public final Map<String, Long> getWorldReadStats() {
+        return WorldReadBatcher.getStats();
+    }
+
+    // Level is only safe to read on the server thread, so world reads are queued with WorldReadBatcher
+    // and the caller yields until the next batch has run them. A key must cover everything the result
+    // depends on; reads with equal keys in the same batch share one result.
+    private MethodResult read(@Nullable Object key, WorldReadBatcher.Read read) throws LuaException {
+        return WorldReadBatcher.submit(computer, key, read);
+    }
+
+    private MethodResult readSteps(@Nullable Object key, WorldReadBatcher.Steps steps) throws LuaException {
+        return WorldReadBatcher.submit(computer, key, steps);
+    }
+
+    // Batched reads never load chunks: loading or generating one takes longer than any tick budget, so
+    // an unloaded chunk reads as missing instead, and its blocks as void air.
+    @Nullable
+    private LevelChunk loadedChunk(int cx, int cz) {
+        return level.getChunkSource().getChunkNow(cx, cz);
+    }
+
+    private BlockState loadedBlockState(BlockPos pos) {
+        LevelChunk chunk = loadedChunk(pos.getX() >> 4, pos.getZ() >> 4);
+        if (chunk == null) {
+            return Blocks.VOID_AIR.defaultBlockState();
+        }
+        LevelChunkSection section = getSection(chunk, pos.getY() >> 4);
+        return section == null ? Blocks.VOID_AIR.defaultBlockState() : section.getBlockState(pos.getX() & 15, pos.getY() & 15, pos.getZ() & 15);
+    }
+
+    private boolean loadedCanSeeSky(BlockPos pos) {
+        return loadedChunk(pos.getX() >> 4, pos.getZ() >> 4) != null && level.canSeeSky(pos);
+    }
+
+    private List<Object> key(Object... parts) {
+        List<Object> key = new ArrayList<>(parts.length + 1);
+        key.add(level.dimension());
+        Collections.addAll(key, parts);
+        return key;
+    }
+
+    private List<PlayerEntry> scanPlayers(AABB region) {
+        List<PlayerEntry> entries = new ArrayList<>();
+        level.getServer().getLevel(level.dimension()).getPlayers(LivingEntity::isAlive).forEach(e -> entries.add(new PlayerEntry(e)));
+        return entries;
+    }
+
+    private static final Set<String> PLAYER_FIELDS = Set.of("x", "y", "z", "name", "uuid", "eyeHeight", "viewVector",
+            "pose", "isPassenger");
+
+    private static Map<Object, Object> buildPlayerRecord(ServerPlayer e, String uuid, EntityQuery query) {
+        Map<Object, Object> map = new HashMap<>();
+        if (query.wants("x")) {
             map.put("x", e.getX());
+        }
+        if (query.wants("y")) {
             map.put("y", e.getY());
+        }
+        if (query.wants("z")) {
             map.put("z", e.getZ());
+        }
+        if (query.wants("name")) {
             map.put("name", e.getDisplayName().getString());
-            String uuid = e.getUUID().toString();
+        }
+        if (query.wants("uuid")) {
             map.put("uuid", uuid);
+        }
+        if (query.wants("eyeHeight")) {
             map.put("eyeHeight", e.getEyeHeight());
+        }
+        if (query.wants("viewVector")) {
+            Vec3 look = e.getLookAngle();
             Map<String, Object> viewVector = new HashMap<>();
-            viewVector.put("x", e.getLookAngle().x);
-            viewVector.put("y", e.getLookAngle().y);
-            viewVector.put("z", e.getLookAngle().z);
+            viewVector.put("x", look.x);
+            viewVector.put("y", look.y);
+            viewVector.put("z", look.z);
             map.put("viewVector", viewVector);
+        }
+        if (query.wants("pose")) {
             map.put("pose", e.getPose().toString());
+        }
+        if (query.wants("isPassenger")) {
             map.put("isPassenger", e.isPassenger());
-            result.put(uuid, map);
-        });
-        return result;
+        }
+        return map;
     }
 
     @LuaFunction
-    public final Map<Integer[], Integer> getMapColor(int x, int z, int x2, int z2) {
-        Map<Integer[], Integer> map = new ConcurrentHashMap<>();
-        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
-        List<CompletableFuture<Void>> futures = new ArrayList<>();
-        for (int i = x; i <= x2; i++) {
-            for (int j = z; j <= z2; j++) {
-                int k = this.level.getHeight(Heightmap.Types.WORLD_SURFACE, i, j);
-                int finalI = i;
-                int finalJ = j;
-                futures.add(CompletableFuture.runAsync(() -> processCoordinate(finalI, finalJ, k, map), executor));
-                if (futures.size() >= 10) {
-                    CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-                    futures.clear();
+    public final MethodResult getMapColor(IArguments args) throws LuaException {
+        int minX = Math.min(args.getInt(0), args.getInt(2));
+        int maxX = Math.max(args.getInt(0), args.getInt(2));
+        int minZ = Math.min(args.getInt(1), args.getInt(3));
+        int maxZ = Math.max(args.getInt(1), args.getInt(3));
+        String format = args.optString(4, "array");
+        if (!format.equals("array") && !format.equals("rle")) {
+            throw new LuaException("Unknown format " + format + ", expected array or rle");
+        }
+        int width = maxX - minX + 1;
+        int depth = maxZ - minZ + 1;
+        if (width > Cryptography.MAX_MAP_COLOR_SIZE || depth > Cryptography.MAX_MAP_COLOR_SIZE) {
+            throw new LuaException("Area too large, at most " + Cryptography.MAX_MAP_COLOR_SIZE + " blocks per side");
+        }
+
+        int[] colors = new int[width * depth];
+        int[] heights = new int[width * depth];
+        BlockPos.MutableBlockPos mpos = new BlockPos.MutableBlockPos();
+        int chunksX = (maxX >> 4) - (minX >> 4) + 1;
+        int chunksZ = (maxZ >> 4) - (minZ >> 4) + 1;
+        // One chunk per step; the columns only touch its heightmap and sections.
+        return readSteps(key("getMapColor", minX, minZ, maxX, maxZ, format), WorldReadBatcher.steps(chunksX * chunksZ, c -> {
+            int cx = (minX >> 4) + c % chunksX;
+            int cz = (minZ >> 4) + c / chunksX;
+            LevelChunk chunk = loadedChunk(cx, cz);
+            int startX = Math.max(minX, cx << 4);
+            int endX = Math.min(maxX, (cx << 4) + 15);
+            int startZ = Math.max(minZ, cz << 4);
+            int endZ = Math.min(maxZ, (cz << 4) + 15);
+            for (int bz = startZ; bz <= endZ; bz++) {
+                for (int bx = startX; bx <= endX; bx++) {
+                    int index = (bz - minZ) * width + (bx - minX);
+                    if (chunk == null) {
+                        colors[index] = 0;
+                        heights[index] = level.getMinBuildHeight() - 1;
+                        continue;
+                    }
+                    int k = chunk.getHeight(Heightmap.Types.WORLD_SURFACE, bx & 15, bz & 15);
+                    int color = 0;
+                    while (k >= chunk.getMinBuildHeight()) {
+                        mpos.set(bx, k, bz);
+                        color = chunk.getBlockState(mpos).getMapColor(chunk, mpos).col;
+                        if (color != 0) {
+                            break;
+                        }
+                        k--;
+                    }
+                    colors[index] = color;
+                    heights[index] = k;
                 }
             }
-        }
-        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).join();
-        executor.shutdown();
-        return map;
+        }, () -> {
+            Map<String, Object> result = new HashMap<>();
+            result.put("x", minX);
+            result.put("z", minZ);
+            result.put("width", width);
+            result.put("depth", depth);
+            result.put("format", format);
+            result.put("colors", format.equals("rle") ? encodeRunLength(colors) : IntArrayList.wrap(colors));
+            result.put("heights", IntArrayList.wrap(heights));
+            return result;
+        }));
     }
-    private void processCoordinate(int x, int z, int k, Map<Integer[], Integer> map) {
-        int color = level.getBlockState(new BlockPos(x, k, z)).getMapColor(level, new BlockPos(x, k, z)).col;
-        map.put(new Integer[]{x, k, z}, color);
+
+    private static String encodeRunLength(int[] values) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        while (i < values.length) {
+            int run = 1;
+            while (i + run < values.length && values[i + run] == values[i]) {
+                run++;
+            }
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(run).append(':').append(String.format("%06X", values[i]));
+            i += run;
+        }
+        return sb.toString();
     }
+
+    private static final Set<String> MONSTER_FIELDS = Set.of("uuid", "name", "displayName", "x", "y", "z", "health",
+            "maxHealth", "armor");
+
     @LuaFunction
-    public final Map<String, Map<String, Object>> getMonster(int scope) {
-        Map<String, Double> cmap = getCoordinate();
-        BlockPos startBlockPos = new BlockPos((int) (Math.floor(cmap.get("x")) + scope), (int) (Math.floor(cmap.get("y")) + scope), (int) (Math.floor(cmap.get("z")) + scope));
-        BlockPos endBlockPos = new BlockPos((int) (cmap.get("x") - scope), (int) (Math.floor(cmap.get("y")) - scope), (int) (Math.floor(cmap.get("z")) - scope));
-        AABB aabb = new AABB(startBlockPos, endBlockPos);
-        Map<String,Map<String,Object>> map = new HashMap<>();
-        this.level.getServer().getLevel(this.level.dimension()).getEntities().getAll().iterator().forEachRemaining(entity -> {
-            if (entity instanceof Monster && entity.isAlive() && aabb.contains(entity.getX(), entity.getY(), entity.getZ())) {
+    public final MethodResult getMonster(IArguments args) throws LuaException {
+        int scope = args.getInt(0);
+        EntityQuery query = EntityQuery.parse(args, 1, MONSTER_FIELDS);
+        return readSteps(query == EntityQuery.ALL ? key("getMonster", pos, scope) : null, monsterRead(scope, query));
+    }
+
+    private EntityRead<Map<String, Object>> monsterRead(int scope, EntityQuery query) {
+        return new EntityRead<>(scope, query.limit, (e, aabb, map) -> {
+            Entity entity = e.entity;
+            if (entity instanceof Monster && entity.isAlive() && aabb.contains(entity.getX(), entity.getY(), entity.getZ()) && query.filter.test(entity)) {
                 Map<String, Object> result = new HashMap<>();
                 Monster monster = (Monster) entity;
-                result.put("uuid", monster.getUUID().toString());
-                result.put("name", monster.getName().getString());
-                result.put("displayName", monster.getDisplayName().getString());
-                result.put("x", monster.getX());
-                result.put("y", monster.getY());
-                result.put("z", monster.getZ());
-                result.put("health", monster.getHealth());
-                result.put("maxHealth", monster.getMaxHealth());
-                result.put("armor", monster.getArmorValue());
-                map.put(monster.getUUID().toString(), result);
+                if (query.wants("uuid")) {
+                    result.put("uuid", e.uuid);
+                }
+                if (query.wants("name")) {
+                    result.put("name", monster.getName().getString());
+                }
+                if (query.wants("displayName")) {
+                    result.put("displayName", monster.getDisplayName().getString());
+                }
+                if (query.wants("x")) {
+                    result.put("x", monster.getX());
+                }
+                if (query.wants("y")) {
+                    result.put("y", monster.getY());
+                }
+                if (query.wants("z")) {
+                    result.put("z", monster.getZ());
+                }
+                if (query.wants("health")) {
+                    result.put("health", monster.getHealth());
+                }
+                if (query.wants("maxHealth")) {
+                    result.put("maxHealth", monster.getMaxHealth());
+                }
+                if (query.wants("armor")) {
+                    result.put("armor", monster.getArmorValue());
+                }
+                map.put(e.uuid, result);
             }
         });
-        return map;
     }
 
+    private AABB getScopeAABB(Map<String, Double> cmap, int scope) {
+        BlockPos startBlockPos = new BlockPos((int) (Math.floor(cmap.get("x")) + scope), (int) (Math.floor(cmap.get("y")) + scope), (int) (Math.floor(cmap.get("z")) + scope));
+        BlockPos endBlockPos = new BlockPos((int) (cmap.get("x") - scope), (int) (Math.floor(cmap.get("y")) - scope), (int) (Math.floor(cmap.get("z")) - scope));
+        return new AABB(startBlockPos, endBlockPos);
+    }
+
+    private static boolean isWholeDimension(int scope) {
+        return scope < 0 || scope > Cryptography.MAX_SCOPE;
+    }
+
+    private List<EntityEntry> scanEntities(AABB region) {
+        LevelEntityGetter<Entity> getter = level.getServer().getLevel(level.dimension()).getEntities();
+        List<EntityEntry> entries = new ArrayList<>();
+        Consumer<Entity> collector = e -> entries.add(new EntityEntry(e));
+        if (region == null) {
+            // Walks the whole dimension, so the cost follows the entity count instead of the scope.
+            getter.getAll().forEach(collector);
+        } else {
+            // Only the entity sections overlapping the box are visited; the margin covers the
+            // rounding of entity positions done by the callers before their own bounds check.
+            getter.get(region.inflate(1.0D), collector);
+        }
+        return entries;
+    }
+
+    // Snapshot entries are shared by every computer reading the same tick's scan. Their records are
+    // built on first use and never modified afterwards.
+    private static final class EntityEntry {
+        private final Entity entity;
+        private final BlockPos pos;
+        private final String uuid;
+        private byte sky;
+        private volatile Map<Object, Object> record;
+
+        private EntityEntry(Entity entity) {
+            this.entity = entity;
+            this.pos = new BlockPos((int) Math.floor(entity.getX()), (int) Math.floor(entity.getY() + 0.5), (int) Math.floor(entity.getZ()));
+            this.uuid = entity.getUUID().toString();
+        }
+
+        private boolean canSeeSky(Level level) {
+            if (sky == 0) {
+                sky = level.hasChunkAt(pos) && level.canSeeSky(pos) ? (byte) 1 : (byte) 2;
+            }
+            return sky == 1;
+        }
+
+        private Map<Object, Object> record() {
+            Map<Object, Object> map = record;
+            if (map == null) {
+                map = buildEntityRecord(entity, uuid);
+                record = map;
+            }
+            return map;
+        }
+    }
+
+    private static final class PlayerEntry {
+        private final ServerPlayer player;
+        private final String uuid;
+        private volatile Map<Object, Object> record;
+
+        private PlayerEntry(ServerPlayer player) {
+            this.player = player;
+            this.uuid = player.getUUID().toString();
+        }
+
+        private Map<Object, Object> record() {
+            Map<Object, Object> map = record;
+            if (map == null) {
+                map = buildPlayerRecord(player, uuid, EntityQuery.ALL);
+                record = map;
+            }
+            return map;
+        }
+    }
 
     @LuaFunction
-    public final void scanTopography(int x, int z, int x2, int z2) {
+    public final MethodResult scanTopography(int x, int z, int x2, int z2) throws LuaException {
         int minX = Math.min(x, x2);
         int maxX = Math.max(x, x2);
         int minZ = Math.min(z, z2);
         int maxZ = Math.max(z, z2);
 
-        if (computer != null) {
-            ArrayList<Integer[]> resultList = new ArrayList<>();
-            if (maxX - minX > 256 || maxZ - minZ > 256) {
-                computer.queueEvent("ComputerScanTopographyDone", new Object[]{resultList});
-            }
-            for (int sx = minX; sx < maxX; sx += 16) {
-                for (int sz = minZ; sz < maxZ; sz += 16) {
-                    LevelChunk chunk = level.getChunkAt(new BlockPos(sx, 64, sz));
-                    int adjust_x = sx - (sx % 16);
-                    adjust_x = adjust_x < 0 ? adjust_x - 16 : adjust_x;
-                    int adjust_z = sz - (sz % 16);
-                    adjust_z = adjust_z < 0 ? adjust_z - 16 : adjust_z;
-
-                    for (int ix = 0; ix < 16; ix++) {
-                        for (int iz = 0; iz < 16; iz++) {
-                            int final_x = adjust_x + ix;
-                            int final_z = adjust_z + iz;
-
-                            if (final_x < maxX && final_z < maxZ) {
-                                int height = chunk.getHeight(Heightmap.Types.MOTION_BLOCKING, ix, iz);
-                                Integer[] pos = new Integer[3];
-                                pos[0] = final_x;
-                                pos[1] = height;
-                                pos[2] = final_z;
-                                resultList.add(pos);
-                            }
-                        }
+        if (computer == null) {
+            return MethodResult.of();
+        }
+        if (maxX - minX > 256 || maxZ - minZ > 256) {
+            computer.queueEvent("ComputerScanTopographyDone", new Object[]{new ArrayList<Integer[]>()});
+            return MethodResult.of();
+        }
+        // The event is queued from the server thread once the heights have been read there, one chunk
+        // per step. Chunks that are not loaded are left out.
+        ArrayList<Integer[]> resultList = new ArrayList<>();
+        int chunksX = (maxX - minX + 15) / 16;
+        int chunksZ = (maxZ - minZ + 15) / 16;
+        return readSteps(null, WorldReadBatcher.steps(chunksX * chunksZ, c -> {
+            int sx = minX + (c / chunksZ) * 16;
+            int sz = minZ + (c % chunksZ) * 16;
+            LevelChunk chunk = loadedChunk(sx >> 4, sz >> 4);
+            if (chunk == null) {
+                return;
+            }
+            int adjust_x = sx - (sx % 16);
+            adjust_x = adjust_x < 0 ? adjust_x - 16 : adjust_x;
+            int adjust_z = sz - (sz % 16);
+            adjust_z = adjust_z < 0 ? adjust_z - 16 : adjust_z;
+
+            for (int ix = 0; ix < 16; ix++) {
+                for (int iz = 0; iz < 16; iz++) {
+                    int final_x = adjust_x + ix;
+                    int final_z = adjust_z + iz;
+
+                    if (final_x < maxX && final_z < maxZ) {
+                        int height = chunk.getHeight(Heightmap.Types.MOTION_BLOCKING, ix, iz);
+                        Integer[] pos = new Integer[3];
+                        pos[0] = final_x;
+                        pos[1] = height;
+                        pos[2] = final_z;
+                        resultList.add(pos);
                     }
                 }
             }
+        }, () -> {
             computer.queueEvent("ComputerScanTopographyDone", new Object[]{resultList});
+            return null;
+        }));
+    }
+
+    @LuaFunction
+    public final int scanTopographyAsync(IArguments args) throws LuaException {
+        int minX = Math.min(args.getInt(0), args.getInt(2));
+        int maxX = Math.max(args.getInt(0), args.getInt(2));
+        int minZ = Math.min(args.getInt(1), args.getInt(3));
+        int maxZ = Math.max(args.getInt(1), args.getInt(3));
+        boolean allowLoad = args.optBoolean(4, false);
+        if (computer == null) {
+            throw new LuaException("No computer to deliver the scan to");
+        }
+        if (maxX - minX >= Cryptography.MAX_SCOPE || maxZ - minZ >= Cryptography.MAX_SCOPE) {
+            throw new LuaException("Area too large, at most " + Cryptography.MAX_SCOPE + " blocks per side");
+        }
+        if (TopographyScanner.countJobs(id) >= Cryptography.MAX_TOPOGRAPHY_JOBS) {
+            throw new LuaException("Too many topography scans running");
         }
+        return TopographyScanner.submit(id, computer, level.getServer().getLevel(level.dimension()), minX, minZ, maxX, maxZ, allowLoad);
     }
-}
 
+    @LuaFunction
+    public final boolean cancelTopographyScan(int jobId) {
+        return TopographyScanner.cancel(id, jobId);
+    }
+}
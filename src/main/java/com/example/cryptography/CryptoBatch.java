@@ -0,0 +1,56 @@
+package com.example.cryptography;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+// Runs the items of a batch call. Small batches stay on the computer thread; larger ones are split
+// across a small shared fork-join pool. Work items must only use their own index and per-thread
+// engines, since they may run on any worker.
+public class CryptoBatch {
+
+    private static final ForkJoinPool POOL = new ForkJoinPool(Cryptography.CRYPTO_BATCH_THREADS, pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setName("Metaphysics-CryptoBatch-" + thread.getPoolIndex());
+        thread.setDaemon(true);
+        return thread;
+    }, null, false);
+
+    public static void forEach(int count, IntConsumer work) {
+        if (count < Cryptography.CRYPTO_BATCH_PARALLEL_THRESHOLD) {
+            for (int i = 0; i < count; i++) {
+                work.accept(i);
+            }
+            return;
+        }
+        int grain = Math.max(1, count / (Cryptography.CRYPTO_BATCH_THREADS * 4));
+        POOL.invoke(new Range(work, 0, count, grain));
+    }
+
+    private static final class Range extends RecursiveAction {
+        private final IntConsumer work;
+        private final int from;
+        private final int to;
+        private final int grain;
+
+        private Range(IntConsumer work, int from, int to, int grain) {
+            this.work = work;
+            this.from = from;
+            this.to = to;
+            this.grain = grain;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= grain) {
+                for (int i = from; i < to; i++) {
+                    work.accept(i);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Range(work, from, mid, grain), new Range(work, mid, to, grain));
+        }
+    }
+}
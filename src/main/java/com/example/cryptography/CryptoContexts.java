@@ -0,0 +1,169 @@
+package com.example.cryptography;
+
+import com.example.cryptography.Codec.Format;
+import dan200.computercraft.api.lua.IArguments;
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.api.lua.LuaFunction;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+
+// Stateful hash and AES-GCM objects handed to Lua, so large messages can be fed in pieces. Each one owns
+// its MessageDigest or Cipher rather than borrowing the per-thread engines, since it lives across calls.
+// Output chunks are encoded one by one: hex and raw pieces concatenate to the whole message, base64
+// pieces do not.
+public class CryptoContexts {
+
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int TLEN = 128;
+
+    public static final class Hash {
+        private final MessageDigest digest;
+        private final Format format;
+        private boolean finished;
+
+        public Hash(String algorithm, Format format) throws LuaException {
+            try {
+                this.digest = MessageDigest.getInstance(algorithm);
+            } catch (GeneralSecurityException e) {
+                throw new LuaException("Unknown hash " + algorithm);
+            }
+            this.format = format;
+        }
+
+        @LuaFunction
+        public final synchronized void update(IArguments args) throws LuaException {
+            checkOpen(finished);
+            digest.update(Codec.getData(args, 0, format));
+        }
+
+        @LuaFunction
+        public final synchronized Object digest() throws LuaException {
+            checkOpen(finished);
+            finished = true;
+            return Codec.encode(digest.digest(), format);
+        }
+    }
+
+    // The IV is generated up front and prefixed to the first piece of output, so the concatenated output
+    // has the same layout as AESGCMEncrypt.
+    public static final class Encryptor {
+        private final Cipher cipher;
+        private final Format format;
+        private byte[] iv;
+        private boolean finished;
+
+        public Encryptor(Key key, Format format) throws LuaException {
+            this.format = format;
+            this.iv = new byte[GCM_IV_LENGTH];
+            CryptoEngines.nextIv(iv);
+            try {
+                this.cipher = Cipher.getInstance(CryptoEngines.AES_GCM);
+                cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TLEN, iv));
+            } catch (GeneralSecurityException e) {
+                throw new LuaException("Cannot initialise cipher: " + e.getMessage());
+            }
+        }
+
+        @LuaFunction
+        public final synchronized Object update(IArguments args) throws LuaException {
+            checkOpen(finished);
+            return output(cipher.update(Codec.getData(args, 0, format)));
+        }
+
+        @LuaFunction
+        public final synchronized Object finish() throws LuaException {
+            checkOpen(finished);
+            finished = true;
+            try {
+                return output(cipher.doFinal());
+            } catch (GeneralSecurityException e) {
+                throw new LuaException("Encryption failed: " + e.getMessage());
+            }
+        }
+
+        private Object output(byte[] out) {
+            if (out == null) {
+                out = new byte[0];
+            }
+            if (iv != null) {
+                byte[] prefixed = new byte[iv.length + out.length];
+                System.arraycopy(iv, 0, prefixed, 0, iv.length);
+                System.arraycopy(out, 0, prefixed, iv.length, out.length);
+                out = prefixed;
+                iv = null;
+            }
+            return Codec.encode(out, format);
+        }
+    }
+
+    // GCM only authenticates at the end, so no plaintext is released before finish() has checked the
+    // tag. The cipher holds the ciphertext until then, capped at MAX_STREAM_DECRYPT_SIZE.
+    public static final class Decryptor {
+        private final Key key;
+        private final Format format;
+        private final byte[] iv = new byte[GCM_IV_LENGTH];
+        private int ivLength;
+        private Cipher cipher;
+        private long received;
+        private boolean finished;
+
+        public Decryptor(Key key, Format format) {
+            this.key = key;
+            this.format = format;
+        }
+
+        @LuaFunction
+        public final synchronized void update(IArguments args) throws LuaException {
+            checkOpen(finished);
+            byte[] data = Codec.decode(args, 0, format);
+            received += data.length;
+            if (received > Cryptography.MAX_STREAM_DECRYPT_SIZE + GCM_IV_LENGTH) {
+                finished = true;
+                throw new LuaException("Message too large to decrypt (max " + Cryptography.MAX_STREAM_DECRYPT_SIZE + " bytes)");
+            }
+            int offset = 0;
+            if (ivLength < GCM_IV_LENGTH) {
+                offset = Math.min(GCM_IV_LENGTH - ivLength, data.length);
+                System.arraycopy(data, 0, iv, ivLength, offset);
+                ivLength += offset;
+                if (ivLength < GCM_IV_LENGTH) {
+                    return;
+                }
+                try {
+                    cipher = Cipher.getInstance(CryptoEngines.AES_GCM);
+                    cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TLEN, iv));
+                } catch (GeneralSecurityException e) {
+                    throw new LuaException("Cannot initialise cipher: " + e.getMessage());
+                }
+            }
+            cipher.update(data, offset, data.length - offset);
+        }
+
+        @LuaFunction
+        public final synchronized Object finish() throws LuaException {
+            checkOpen(finished);
+            finished = true;
+            if (cipher == null) {
+                throw new LuaException("Ciphertext too short");
+            }
+            byte[] plain;
+            try {
+                plain = cipher.doFinal();
+            } catch (GeneralSecurityException e) {
+                throw new LuaException("Wrong key or corrupted message");
+            }
+            return format == Format.RAW ? plain : new String(plain, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void checkOpen(boolean finished) throws LuaException {
+        if (finished) {
+            throw new LuaException("Context already finished");
+        }
+    }
+}
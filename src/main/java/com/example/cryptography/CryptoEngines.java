@@ -0,0 +1,83 @@
+package com.example.cryptography;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import java.security.GeneralSecurityException;
+import java.security.KeyFactory;
+import java.security.KeyPairGenerator;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.HashMap;
+import java.util.Map;
+
+// JCA engines kept per thread so the hot paths skip the provider lookup on every call. Computer and
+// worker threads are pooled, so the number of instances stays bounded. Callers must finish with an
+// engine before handing the thread to anything else that may use the same engine.
+public class CryptoEngines {
+
+    public static final String AES_GCM = "AES_256/GCM/NoPadding";
+    public static final String ECDSA = "SHA256withECDSA";
+
+    private interface Factory<T> {
+        T create() throws GeneralSecurityException;
+    }
+
+    private static <T> ThreadLocal<T> perThread(Factory<T> factory) {
+        return ThreadLocal.withInitial(() -> {
+            try {
+                return factory.create();
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private static final ThreadLocal<Map<String, MessageDigest>> DIGESTS = ThreadLocal.withInitial(HashMap::new);
+    private static final ThreadLocal<Cipher> AES = perThread(() -> Cipher.getInstance(AES_GCM));
+    private static final ThreadLocal<Signature> SIGNATURES = perThread(() -> Signature.getInstance(ECDSA));
+    private static final ThreadLocal<KeyFactory> EC_KEYS = perThread(() -> KeyFactory.getInstance("EC"));
+    private static final ThreadLocal<KeyAgreement> ECDH = perThread(() -> KeyAgreement.getInstance("ECDH"));
+    private static final ThreadLocal<KeyPairGenerator> EC_GENERATORS = perThread(() -> {
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("EC");
+        kpg.initialize(new ECGenParameterSpec("secp256r1"));
+        return kpg;
+    });
+
+    public static MessageDigest digest(String algorithm) throws NoSuchAlgorithmException {
+        Map<String, MessageDigest> digests = DIGESTS.get();
+        MessageDigest digest = digests.get(algorithm);
+        if (digest == null) {
+            digest = MessageDigest.getInstance(algorithm);
+            digests.put(algorithm, digest);
+        } else {
+            digest.reset();
+        }
+        return digest;
+    }
+
+    public static Cipher aesGcm() {
+        return AES.get();
+    }
+
+    public static Signature signature() {
+        return SIGNATURES.get();
+    }
+
+    public static KeyFactory ecKeyFactory() {
+        return EC_KEYS.get();
+    }
+
+    public static KeyAgreement ecdh() {
+        return ECDH.get();
+    }
+
+    public static KeyPairGenerator ecKeyPairGenerator() {
+        return EC_GENERATORS.get();
+    }
+
+    public static void nextIv(byte[] iv) {
+        RandomPool.nextBytes(iv);
+    }
+}
@@ -0,0 +1,172 @@
+package com.example.cryptography;
+
+import com.example.cryptography.Codec.Format;
+import dan200.computercraft.api.lua.IArguments;
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.api.lua.LuaFunction;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+// An AES-GCM channel between two ends of an ECDH agreement. Each end opens with a fresh random nonce,
+// sends it with getNonce() and passes the peer's to accept(). Both nonces go into the HKDF salt, so every
+// session gets keys no earlier session used, even between the same key pairs; captured messages from an
+// old session never authenticate in a new one. The expanded key material is split into one key per
+// direction, chosen by the order of the two nonces, so the ends never share a (key, nonce) pair and a
+// message cannot be reflected back to its sender. Each message carries its 8 byte counter in front,
+// and received counters are checked against a sliding window.
+public class CryptoSession {
+
+    private static final int SESSION_NONCE_LENGTH = 32;
+    private static final int COUNTER_LENGTH = 8;
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int TLEN = 128;
+    private static final int WINDOW = 64;
+    private static final byte[] INFO = "metaphysics.session.aes-256-gcm.v2".getBytes(StandardCharsets.UTF_8);
+
+    private final Format format;
+    private final byte[] nonce = RandomPool.nextBytes(SESSION_NONCE_LENGTH);
+    private byte[] sharedSecret;
+    private SecretKey sendKey;
+    private SecretKey receiveKey;
+    private boolean closed;
+    private long counter;
+    private long highest = -1;
+    private long seen;
+
+    public CryptoSession(byte[] sharedSecret, Format format) {
+        this.sharedSecret = sharedSecret;
+        this.format = format;
+    }
+
+    @LuaFunction
+    public final Object getNonce() {
+        return Codec.encode(nonce, format);
+    }
+
+    @LuaFunction
+    public final synchronized boolean accept(IArguments args) throws LuaException {
+        checkNotClosed();
+        if (sendKey != null) {
+            throw new LuaException("Session already established");
+        }
+        byte[] peer = Codec.decode(args, 0, format);
+        if (peer.length != SESSION_NONCE_LENGTH) {
+            throw new LuaException("Peer nonce must be " + SESSION_NONCE_LENGTH + " bytes");
+        }
+        int order = Arrays.compareUnsigned(nonce, peer);
+        if (order == 0) {
+            throw new LuaException("Peer nonce equals our own");
+        }
+        byte[] low = order < 0 ? nonce : peer;
+        byte[] high = order < 0 ? peer : nonce;
+        byte[] salt = new byte[SESSION_NONCE_LENGTH * 2];
+        System.arraycopy(low, 0, salt, 0, SESSION_NONCE_LENGTH);
+        System.arraycopy(high, 0, salt, SESSION_NONCE_LENGTH, SESSION_NONCE_LENGTH);
+        byte[] keys;
+        try {
+            keys = KeyDerivation.hkdf(sharedSecret, salt, INFO, 64);
+        } catch (GeneralSecurityException e) {
+            throw new LuaException("Cannot derive session keys: " + e.getMessage());
+        }
+        // The end with the lower nonce sends with the first key and receives with the second.
+        SecretKey lowKey = new SecretKeySpec(keys, 0, 32, "AES");
+        SecretKey highKey = new SecretKeySpec(keys, 32, 32, "AES");
+        sendKey = order < 0 ? lowKey : highKey;
+        receiveKey = order < 0 ? highKey : lowKey;
+        Arrays.fill(keys, (byte) 0);
+        Arrays.fill(sharedSecret, (byte) 0);
+        sharedSecret = null;
+        return true;
+    }
+
+    @LuaFunction
+    public final synchronized Object encrypt(IArguments args) throws LuaException {
+        byte[] data = Codec.getData(args, 0, format);
+        checkEstablished();
+        if (counter == Long.MAX_VALUE) {
+            throw new LuaException("Session exhausted, open a new one");
+        }
+        long n = counter++;
+        try {
+            Cipher cipher = CryptoEngines.aesGcm();
+            cipher.init(Cipher.ENCRYPT_MODE, sendKey, new GCMParameterSpec(TLEN, iv(n)));
+            byte[] msg = new byte[COUNTER_LENGTH + cipher.getOutputSize(data.length)];
+            ByteBuffer.wrap(msg).putLong(n);
+            cipher.doFinal(data, 0, data.length, msg, COUNTER_LENGTH);
+            return Codec.encode(msg, format);
+        } catch (GeneralSecurityException e) {
+            throw new LuaException("Encryption failed: " + e.getMessage());
+        }
+    }
+
+    @LuaFunction
+    public final synchronized Object decrypt(IArguments args) throws LuaException {
+        byte[] msg = Codec.decode(args, 0, format);
+        checkEstablished();
+        if (msg.length < COUNTER_LENGTH + TLEN / 8) {
+            throw new LuaException("Message too short");
+        }
+        long n = ByteBuffer.wrap(msg).getLong();
+        if (n < 0 || !accepts(n)) {
+            throw new LuaException("Replayed message");
+        }
+        byte[] plain;
+        try {
+            Cipher cipher = CryptoEngines.aesGcm();
+            cipher.init(Cipher.DECRYPT_MODE, receiveKey, new GCMParameterSpec(TLEN, iv(n)));
+            plain = cipher.doFinal(msg, COUNTER_LENGTH, msg.length - COUNTER_LENGTH);
+        } catch (GeneralSecurityException e) {
+            throw new LuaException("Wrong key or corrupted message");
+        }
+        // Only authenticated messages may move the window, so forged counters cannot block real ones.
+        mark(n);
+        return format == Format.RAW ? plain : new String(plain, StandardCharsets.UTF_8);
+    }
+
+    @LuaFunction
+    public final synchronized void close() {
+        closed = true;
+        sendKey = null;
+        receiveKey = null;
+        if (sharedSecret != null) {
+            Arrays.fill(sharedSecret, (byte) 0);
+            sharedSecret = null;
+        }
+    }
+
+    private static byte[] iv(long n) {
+        return ByteBuffer.allocate(GCM_IV_LENGTH).putInt(0).putLong(n).array();
+    }
+
+    private boolean accepts(long n) {
+        return n > highest || (highest - n < WINDOW && (seen & (1L << (highest - n))) == 0);
+    }
+
+    private void mark(long n) {
+        if (n > highest) {
+            seen = n - highest >= WINDOW ? 0 : seen << (n - highest);
+            highest = n;
+        }
+        seen |= 1L << (highest - n);
+    }
+
+    private void checkNotClosed() throws LuaException {
+        if (closed) {
+            throw new LuaException("Session is closed");
+        }
+    }
+
+    private void checkEstablished() throws LuaException {
+        checkNotClosed();
+        if (sendKey == null) {
+            throw new LuaException("Session not established, pass the peer's nonce to accept first");
+        }
+    }
+}
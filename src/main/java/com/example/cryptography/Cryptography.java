@@ -1,18 +1,74 @@
 package com.example.cryptography;
-import net.minecraft.core.BlockPos;
+import dan200.computercraft.api.ComputerCraftAPI;
 import net.minecraftforge.common.MinecraftForge;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.ModLoadingContext;
 import net.minecraftforge.fml.common.Mod;
-import java.util.HashMap;
-import java.util.Map;
+import net.minecraftforge.fml.config.ModConfig;
 
 @Mod("cryptography")
 public class Cryptography {
 
-    public static Map<Integer, BlockPos> ComputerPosMapper = new HashMap<>();
-    public static Map<String, Boolean> ComputerStatusMapper = new HashMap<>();
     public static final boolean isUsePhoneAPI = false;
     public static final int MAX_SCOPE = 2500;
+    public static final int MAX_MAP_COLOR_SIZE = 512;
+    public static final int MAX_BATCH_BLOCKS = 4096;
+    public static final int MAX_REGION_VOLUME = 65536;
+    public static final int FIND_BLOCKS_PAGE_SIZE = 256;
+    public static final int FIND_BLOCKS_SECTIONS_PER_CALL = 32;
+    public static final int FIND_BLOCKS_VISITS_PER_CALL = 4096;
+    public static final int PATHFINDING_MAX_NODES = 4096;
+    public static final int PATHFINDING_MAX_NODES_ASYNC = 200000;
+    public static final int PATHFINDING_SNAPSHOT_MARGIN = 32;
+    public static final int PATHFINDING_MAX_SNAPSHOT_CHUNKS = 1024;
+    public static final int WORLD_WORKER_THREADS = 2;
+    public static final int WORLD_WORKER_QUEUE = 64;
+    public static final int CRYPTO_WORKER_THREADS = 2;
+    public static final int CRYPTO_WORKER_QUEUE = 64;
+    public static final String DEFAULT_KDF = "hkdf";
+    public static final int PBKDF2_ITERATIONS = 32768;
+    public static final int KEY_CACHE_SIZE = 256;
+    public static final int KEY_PARSE_CACHE_SIZE = 64;
+    public static final int MAX_KEY_HANDLES = 256;
+    public static final int CRYPTO_BATCH_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    public static final int CRYPTO_BATCH_PARALLEL_THRESHOLD = 64;
+    public static final int MAX_CRYPTO_BATCH = 4096;
+    public static final int RANDOM_POOL_SIZE = 65536;
+    public static final long RANDOM_RESEED_INTERVAL_BYTES = 1L << 26;
+    public static final int MAX_RANDOM_BYTES = 1 << 20;
+    public static final int FILE_CHUNK_SIZE = 65536;
+    public static final int MAX_STREAM_DECRYPT_SIZE = 16 << 20;
+    public static final int MAX_DECOMPRESSED_SIZE = 16 << 20;
+    public static final int MAX_TOPOGRAPHY_JOBS = 4;
+    public static final long TOPOGRAPHY_TICK_BUDGET_NANOS = 2_000_000L;
+    public static final int TOPOGRAPHY_PAGES_PER_TICK = 8;
+    public static final int QUERY_CACHE_MAX_SNAPSHOTS = 64;
+    public static final int SHIP_INDEX_CELL_SIZE = 256;
+    public static final int SHIP_INDEX_MAX_CELLS = 64;
+    public static final int ENTITY_WATCH_INTERVAL = 5;
+    public static final int ENTITY_WATCH_MAX_RADIUS = 128;
+    public static final int ENTITY_WATCH_MAX_TRACKED = 256;
+    public static final double ENTITY_WATCH_MIN_MOVE = 2.0;
+    public static final int ENTITY_LOOKUP_MAX_RANGE = 2500;
+    public static final int ENTITY_LOOKUP_MAX_BATCH = 256;
+    public static final int ENTITY_READ_STEP = 256;
+    public static final long WORLD_READ_TICK_BUDGET_NANOS = 2_000_000L;
+    public static final int WORLD_READ_MAX_PENDING = 1024;
+    public static final int WORLD_READ_STEPS_PER_TURN = 16;
     public Cryptography() {
         MinecraftForge.EVENT_BUS.register(this);
+        ModLoadingContext.get().registerConfig(ModConfig.Type.SERVER, CryptographyConfig.SPEC);
+        RandomPool.init();
+        ComputerCraftAPI.registerAPIFactory(new ComputerFileSystems());
+    }
+
+    @SubscribeEvent
+    public void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            WorldReadBatcher.tick();
+            TopographyScanner.tick();
+            EntityWatcher.tick();
+        }
     }
 }
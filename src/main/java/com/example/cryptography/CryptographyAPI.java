@@ -1,242 +1,211 @@
 package com.example.cryptography;
 
+import com.example.cryptography.Codec.Format;
+import dan200.computercraft.api.filesystem.IFileSystem;
 import dan200.computercraft.api.lua.IArguments;
 import dan200.computercraft.api.lua.ILuaAPI;
 import dan200.computercraft.api.lua.LuaException;
 import dan200.computercraft.api.lua.LuaFunction;
+import dan200.computercraft.shared.computer.core.ServerComputer;
 
 import javax.crypto.*;
 import javax.crypto.spec.GCMParameterSpec;
+import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.security.*;
-import java.security.spec.ECGenParameterSpec;
-import java.security.spec.InvalidKeySpecException;
-import java.security.spec.PKCS8EncodedKeySpec;
-import java.security.spec.X509EncodedKeySpec;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
 
 public class CryptographyAPI implements ILuaAPI {
 
-    private final String ALGO = "AES_256/GCM/NoPadding";
     public final int AES_KEY_SIZE = 256;
     public final int GCM_IV_LENGTH = 12;
     public final int TLEN = 128;
 
+    private static final List<String> HASHES = List.of("SHA3-256", "SHA3-512", "SHA-256", "SHA-512");
+
+    private final ServerComputer computer;
+    private final KeyStore keys = new KeyStore();
+    private final AtomicInteger nextTask = new AtomicInteger();
+
+    public CryptographyAPI(ServerComputer computer) {
+        this.computer = computer;
+    }
+
     @Override
     public String[] getNames() {
         return new String[] {"crypto", "cryptography"};
     }
-    private Key generateKey(String key_string) throws NoSuchAlgorithmException, NoSuchProviderException {
-        KeyGenerator kg = KeyGenerator.getInstance("AES");
-        SecureRandom sr = SecureRandom.getInstance("SHA1PRNG", "SUN");
-        sr.setSeed(key_string.getBytes(StandardCharsets.UTF_8));
-        kg.init(AES_KEY_SIZE, sr);
-        return kg.generateKey();
+    private Key generateKey(String key_string, String kdf) throws GeneralSecurityException {
+        return KeyDerivation.derive(key_string, kdf);
     }
 
-    private String bytesToHexString(byte[] src) {
-        StringBuilder sb = new StringBuilder();
-        if (src == null || src.length == 0) {
-            return null;
-        }
-        for (int j = 0; j < src.length; j++) {
-            int v = src[j] & 0xFF;
-            String hv = Integer.toHexString(v);
-            if (hv.length() < 2) {
-                sb.append(0);
+    // The AES functions take either a key derivation name or a table {kdf = ..., format = ..., compress = ...}.
+    // With compress set the plaintext is deflated before encryption and inflated after decryption. The
+    // default derivation is HKDF, which is cheap and suits high-entropy keys such as ECDH secrets; human
+    // chosen passphrases should ask for pbkdf2, preferably through the async calls. Its cost is the
+    // pbkdf2Iterations server config entry.
+    private static final class AesOptions {
+        private String kdf = Cryptography.DEFAULT_KDF;
+        private boolean kdfGiven;
+        private boolean compress;
+        private Format format = Format.HEX;
+
+        private AesOptions(IArguments args, int index) throws LuaException {
+            Object value = args.get(index);
+            if (value instanceof Map<?, ?> table) {
+                if (table.get("kdf") != null) {
+                    kdf = table.get("kdf").toString();
+                    kdfGiven = true;
+                }
+                format = Codec.parseFormat(table.get("format"));
+                compress = Boolean.TRUE.equals(table.get("compress"));
+            } else if (value != null) {
+                kdf = args.getString(index);
+                kdfGiven = true;
+            }
+            if (!KeyDerivation.isSupported(kdf)) {
+                throw new LuaException("Unknown key derivation " + kdf + ", expected legacy, pbkdf2 or hkdf");
             }
-            sb.append(hv);
-        }
-        return sb.toString().toUpperCase();
-    }
-
-    private byte[] hexStringToBytes(String src) {
-        if (src == null || src.equals("")) {
-            return null;
-        }
-        src = src.toUpperCase();
-        int len = src.length() / 2;
-        char[] hexChars = src.toCharArray();
-        byte[] b = new byte[len];
-        for (int i = 0; i < len; i++) {
-            int pos = i * 2;
-            b[i] = (byte) (charToByte(hexChars[pos]) << 4 | charToByte(hexChars[pos + 1]));
         }
-        return b;
-    }
-
-    private byte charToByte(char c) {
-        return (byte) "0123456789ABCDEF".indexOf(c);
     }
 
-    @LuaFunction
-    public final Object SHA512HASH(IArguments raw_data) {
-        MessageDigest sha512 = null;
+    private Object hash(String algorithm, IArguments args) throws LuaException {
+        Format format = Codec.getFormat(args, 1);
+        byte[] data = Codec.getData(args, 0, format);
+        MessageDigest digest = null;
         try {
-            sha512 = MessageDigest.getInstance("SHA3-512");
+            digest = CryptoEngines.digest(algorithm);
         } catch (NoSuchAlgorithmException ignored) {
 
         }
-        try {
-            sha512.update(raw_data.getString(0).getBytes(StandardCharsets.UTF_8));
-        } catch (LuaException ignored) {
+        digest.update(data);
+        return Codec.encode(digest.digest(), format);
+    }
 
-        }
-        byte[] hash = sha512.digest();
-        return bytesToHexString(hash);
+    @LuaFunction
+    public final Object SHA512HASH(IArguments raw_data) throws LuaException {
+        return hash("SHA3-512", raw_data);
     }
 
     @LuaFunction
     public final Object SHA256HASH(IArguments raw_data) throws LuaException {
-        MessageDigest sha256 = null;
-        try {
-            sha256 = MessageDigest.getInstance("SHA3-256");
-        } catch (NoSuchAlgorithmException ignored) {
-
-        }
-        sha256.update(raw_data.getString(0).getBytes(StandardCharsets.UTF_8));
-        byte[] hash = sha256.digest();
-        return bytesToHexString(hash);
+        return hash("SHA3-256", raw_data);
     }
 
     @LuaFunction
     public final Object AESGCMEncrypt(IArguments args) throws LuaException {
-        Cipher cipher = null;
-        try {
-            cipher = Cipher.getInstance(ALGO);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException ignored) {
+        AesOptions options = new AesOptions(args, 2);
+        byte[] textBytes = Codec.getData(args, 0, options.format);
+        return Codec.encode(encrypt(textBytes, args.getString(1), options), options.format);
+    }
 
+    private byte[] encrypt(byte[] textBytes, String key, AesOptions options) {
+        if (options.compress) {
+            textBytes = Compression.compress(textBytes, Deflater.DEFAULT_COMPRESSION);
         }
+        Cipher cipher = CryptoEngines.aesGcm();
         byte[] iv = new byte[GCM_IV_LENGTH];
-        SecureRandom sr = new SecureRandom();
-        sr.nextBytes(iv);
-        try {
-            cipher.init(Cipher.ENCRYPT_MODE, generateKey(args.getString(1)), new GCMParameterSpec(TLEN, iv));
-        } catch (InvalidKeyException | InvalidAlgorithmParameterException | NoSuchAlgorithmException | NoSuchProviderException ignored) {
-
-        }
-        byte[] textBytes = args.getString(0).getBytes(StandardCharsets.UTF_8);
+        CryptoEngines.nextIv(iv);
         byte[] encryptBytes = new byte[0];
         try {
+            cipher.init(Cipher.ENCRYPT_MODE, generateKey(key, options.kdf), new GCMParameterSpec(TLEN, iv));
             encryptBytes = cipher.doFinal(textBytes);
-        } catch (IllegalBlockSizeException | BadPaddingException ignored) {
+        } catch (GeneralSecurityException ignored) {
 
         }
         byte[] msg = new byte[GCM_IV_LENGTH + encryptBytes.length];
         System.arraycopy(iv, 0, msg, 0, GCM_IV_LENGTH);
         System.arraycopy(encryptBytes, 0, msg, GCM_IV_LENGTH, encryptBytes.length);
-        return bytesToHexString(msg);
+        return msg;
     }
 
     @LuaFunction
     public final Object AESGCMDecrypt(IArguments args) throws LuaException {
-        byte[] bytes = hexStringToBytes(args.getString(0));
+        AesOptions options = new AesOptions(args, 2);
+        byte[] finals = decrypt(Codec.decode(args, 0, options.format), args.getString(1), options);
+        return options.format == Format.RAW ? finals : new String(finals, StandardCharsets.UTF_8);
+    }
+
+    private byte[] decrypt(byte[] bytes, String key, AesOptions options) throws LuaException {
+        if (bytes.length < GCM_IV_LENGTH) {
+            throw new LuaException("Ciphertext too short");
+        }
         byte[] iv = new byte[GCM_IV_LENGTH];
         byte[] content = new byte[bytes.length - GCM_IV_LENGTH];
         System.arraycopy(bytes, 0, iv, 0, GCM_IV_LENGTH);
         System.arraycopy(bytes, GCM_IV_LENGTH, content, 0, content.length);
-        Cipher cipher = null;
-        try {
-            cipher = Cipher.getInstance(ALGO);
-        } catch (NoSuchAlgorithmException | NoSuchPaddingException ignored) {
-
+        byte[] finals = decrypt(iv, content, key, options.kdf);
+        if (finals == null && !options.kdfGiven && !options.kdf.equals(KeyDerivation.LEGACY)) {
+            // Ciphertexts made before kdf existed only open with the legacy key.
+            finals = decrypt(iv, content, key, KeyDerivation.LEGACY);
         }
-        GCMParameterSpec params = new GCMParameterSpec(TLEN, iv);
-        try {
-            cipher.init(Cipher.DECRYPT_MODE, generateKey(args.getString(1)), params);
-        } catch (InvalidKeyException | InvalidAlgorithmParameterException | NoSuchAlgorithmException | NoSuchProviderException ignored) {
-
+        if (finals == null) {
+            return new byte[0];
         }
-        byte[] finals = new byte[0];
-        try {
-            finals = cipher.doFinal(content);
-        } catch (IllegalBlockSizeException | BadPaddingException ignored) {
+        return options.compress ? Compression.decompress(finals) : finals;
+    }
 
+    private byte[] decrypt(byte[] iv, byte[] content, String key, String kdf) {
+        try {
+            Cipher cipher = CryptoEngines.aesGcm();
+            cipher.init(Cipher.DECRYPT_MODE, generateKey(key, kdf), new GCMParameterSpec(TLEN, iv));
+            return cipher.doFinal(content);
+        } catch (GeneralSecurityException e) {
+            return null;
         }
-        return new String(finals, StandardCharsets.UTF_8);
     }
 
     @LuaFunction
-    public final Map<String, String> GenECDHKeypair() {
-        KeyPairGenerator kpg = null;
-        try {
-            kpg = KeyPairGenerator.getInstance("EC");
-        } catch (NoSuchAlgorithmException ignored) {
-
-        }
-        ECGenParameterSpec ecSpec = new ECGenParameterSpec("secp256r1");
-        try {
-            kpg.initialize(ecSpec);
-        } catch (InvalidAlgorithmParameterException ignored) {
+    public final Map<String, Object> GenECDHKeypair(IArguments args) throws LuaException {
+        return keypair(Codec.getFormat(args, 0));
+    }
 
-        }
-        KeyPair kp = kpg.generateKeyPair();
-        String pri = bytesToHexString(kp.getPrivate().getEncoded());
-        String pub = bytesToHexString(kp.getPublic().getEncoded());
-        Map<String, String> map = new HashMap<>();
-        map.put("pri", pri);
-        map.put("pub", pub);
+    private static Map<String, Object> keypair(Format format) {
+        KeyPair kp = CryptoEngines.ecKeyPairGenerator().generateKeyPair();
+        Map<String, Object> map = new HashMap<>();
+        map.put("pri", Codec.encode(kp.getPrivate().getEncoded(), format));
+        map.put("pub", Codec.encode(kp.getPublic().getEncoded(), format));
         return map;
     }
 
     @LuaFunction
     public final Object GetECDHFinalKey(IArguments args) throws LuaException {
-        X509EncodedKeySpec x509 = new X509EncodedKeySpec(hexStringToBytes(args.getString(0)));
-        PKCS8EncodedKeySpec pkcs = new PKCS8EncodedKeySpec(hexStringToBytes(args.getString(1)));
-        KeyFactory kf = null;
-        try {
-            kf = KeyFactory.getInstance("EC");
-        } catch (NoSuchAlgorithmException ignored) {
-
-        }
-        PublicKey pk = null;
-        try {
-            pk = kf.generatePublic(x509);
-        } catch (InvalidKeySpecException ignored) {
-
-        }
-        PrivateKey priK = null;
-        try {
-            priK = kf.generatePrivate(pkcs);
-        } catch (InvalidKeySpecException ignored) {
-
-        }
-        KeyAgreement kam = null;
-        try {
-            kam = KeyAgreement.getInstance("ECDH");
-        } catch (NoSuchAlgorithmException ignored) {
+        Format format = Codec.getFormat(args, 2);
+        PublicKey pk = keys.getPublic(args.getString(0), format);
+        PrivateKey priK = keys.getPrivate(args.getString(1), format);
+        return Codec.encode(agree(pk, priK), format);
+    }
 
-        }
+    private static byte[] agree(PublicKey pk, PrivateKey priK) throws LuaException {
+        KeyAgreement kam = CryptoEngines.ecdh();
         try {
             kam.init(priK);
-        } catch (InvalidKeyException ignored) {
-
-        }
-        try {
             kam.doPhase(pk, true);
-        } catch (InvalidKeyException ignored) {
-
+        } catch (InvalidKeyException e) {
+            throw new LuaException("Key agreement failed: " + e.getMessage());
         }
-        byte[] sSecret = kam.generateSecret();
-        return bytesToHexString(sSecret);
+        return kam.generateSecret();
     }
 
     @LuaFunction
-    public final String MakeECDSASign(IArguments args) throws LuaException {
-        String input = args.getString(0);
-        String pri = args.getString(1);
-        String result = "";
+    public final Object MakeECDSASign(IArguments args) throws LuaException {
+        Format format = Codec.getFormat(args, 2);
+        byte[] input = format == Format.RAW ? Codec.toArray(args.getBytes(0)) : args.getString(0).getBytes();
+        PrivateKey key = keys.getPrivate(args.getString(1), format);
+        Object result = "";
         byte[] signedBytes;
         try {
-            Signature sign = Signature.getInstance("SHA256withECDSA");
-            PKCS8EncodedKeySpec pkcs = new PKCS8EncodedKeySpec(hexStringToBytes(pri));
-            KeyFactory kf = KeyFactory.getInstance("EC");
-            PrivateKey key = kf.generatePrivate(pkcs);
+            Signature sign = CryptoEngines.signature();
             sign.initSign(key);
-            sign.update(input.getBytes());
+            sign.update(input);
             signedBytes = sign.sign();
-            result = bytesToHexString(signedBytes);
+            result = Codec.encode(signedBytes, format);
         } catch (Exception ignored) {
 
         }
@@ -245,32 +214,295 @@ public class CryptographyAPI implements ILuaAPI {
 
     @LuaFunction
     public final boolean CheckECDSASign(IArguments args) throws LuaException {
-        String input = args.getString(0);
-        String pub = args.getString(1);
-        String data = args.getString(2);
+        Format format = Codec.getFormat(args, 3);
+        byte[] input = Codec.decode(args, 0, format);
+        PublicKey key = keys.getPublic(args.getString(1), format);
+        byte[] data = format == Format.RAW ? Codec.toArray(args.getBytes(2)) : args.getString(2).getBytes();
         boolean result = false;
         try {
-            Signature signature = Signature.getInstance("SHA256withECDSA");
-            X509EncodedKeySpec x509 = new X509EncodedKeySpec(hexStringToBytes(pub));
-            KeyFactory kf = KeyFactory.getInstance("EC");
-            PublicKey key = kf.generatePublic(x509);
+            Signature signature = CryptoEngines.signature();
             signature.initVerify(key);
-            signature.update(data.getBytes());
-            result = signature.verify(hexStringToBytes(input));
+            signature.update(data);
+            result = signature.verify(input);
             } catch (Exception ignored) {
         }
         return result;
     }
 
+    // Compressed output is binary, so unlike the other calls these default to raw strings.
+    @LuaFunction
+    public final Object compress(IArguments args) throws LuaException {
+        int level = Compression.checkLevel(args.optInt(1, Deflater.DEFAULT_COMPRESSION));
+        return Codec.encode(Compression.compress(Codec.toArray(args.getBytes(0)), level), Codec.getFormat(args, 2, Format.RAW));
+    }
+
+    @LuaFunction
+    public final byte[] decompress(IArguments args) throws LuaException {
+        return Compression.decompress(Codec.decode(args, 0, Codec.getFormat(args, 1, Format.RAW)));
+    }
+
+    @LuaFunction
+    public final Compression.Compressor newCompressor(IArguments args) throws LuaException {
+        int level = Compression.checkLevel(args.optInt(0, Deflater.DEFAULT_COMPRESSION));
+        return new Compression.Compressor(level, Codec.getFormat(args, 1, Format.RAW));
+    }
+
+    @LuaFunction
+    public final Compression.Decompressor newDecompressor(IArguments args) throws LuaException {
+        return new Compression.Decompressor(Codec.getFormat(args, 0, Format.RAW));
+    }
+
+    // The ECDH secret never leaves Java. The session derives its keys from it once both ends have
+    // swapped nonces through getNonce() and accept(), and then forgets it.
+    @LuaFunction
+    public final CryptoSession openSession(IArguments args) throws LuaException {
+        Format format = Codec.getFormat(args, 2);
+        PrivateKey priK = keys.getPrivate(args.getString(0), format);
+        PublicKey pk = keys.getPublic(args.getString(1), format);
+        return new CryptoSession(agree(pk, priK), format);
+    }
+
+    @LuaFunction
+    public final CryptoContexts.Hash newHash(IArguments args) throws LuaException {
+        return new CryptoContexts.Hash(hashAlgorithm(args.optString(0).orElse("SHA3-256")), Codec.getFormat(args, 1));
+    }
+
+    @LuaFunction
+    public final CryptoContexts.Encryptor newEncryptor(IArguments args) throws LuaException {
+        AesOptions options = new AesOptions(args, 1);
+        return new CryptoContexts.Encryptor(deriveKey(args.getString(0), options.kdf), options.format);
+    }
+
     @LuaFunction
-    public final String Salt() {
-        byte[] b = new byte[0];
+    public final CryptoContexts.Decryptor newDecryptor(IArguments args) throws LuaException {
+        AesOptions options = new AesOptions(args, 1);
+        return new CryptoContexts.Decryptor(deriveKey(args.getString(0), options.kdf), options.format);
+    }
+
+    // The async variants decode their arguments here, on the computer thread, then do the work on the
+    // crypto pool and answer with a CryptoTaskDone event: (task, true, result) or (task, false, error).
+    @LuaFunction
+    public final int encryptAsync(IArguments args) throws LuaException {
+        AesOptions options = new AesOptions(args, 2);
+        byte[] textBytes = Codec.getData(args, 0, options.format);
+        String key = args.getString(1);
+        return submit(() -> Codec.encode(encrypt(textBytes, key, options), options.format));
+    }
+
+    @LuaFunction
+    public final int decryptAsync(IArguments args) throws LuaException {
+        AesOptions options = new AesOptions(args, 2);
+        byte[] bytes = Codec.decode(args, 0, options.format);
+        String key = args.getString(1);
+        return submit(() -> {
+            byte[] finals = decrypt(bytes, key, options);
+            return options.format == Format.RAW ? finals : new String(finals, StandardCharsets.UTF_8);
+        });
+    }
+
+    @LuaFunction
+    public final int genKeypairAsync(IArguments args) throws LuaException {
+        Format format = Codec.getFormat(args, 0);
+        return submit(() -> keypair(format));
+    }
+
+    @LuaFunction
+    public final int ecdhAsync(IArguments args) throws LuaException {
+        Format format = Codec.getFormat(args, 2);
+        PublicKey pk = keys.getPublic(args.getString(0), format);
+        PrivateKey priK = keys.getPrivate(args.getString(1), format);
+        return submit(() -> Codec.encode(agree(pk, priK), format));
+    }
+
+    // File paths are on this computer's own disk. Results arrive as CryptoTaskDone events like the other
+    // async calls: the digest for hashFile, the number of bytes written for encryptFile and decryptFile.
+    @LuaFunction
+    public final int hashFile(IArguments args) throws LuaException {
+        IFileSystem fs = fileSystem();
+        String path = args.getString(0);
+        String algorithm = hashAlgorithm(args.optString(1).orElse("SHA3-256"));
+        Format format = Codec.getFormat(args, 2);
+        return submit(() -> Codec.encode(FileCrypto.hash(fs, path, algorithm), format));
+    }
+
+    @LuaFunction
+    public final int encryptFile(IArguments args) throws LuaException {
+        IFileSystem fs = fileSystem();
+        String src = args.getString(0);
+        String dst = args.getString(1);
+        String key = args.getString(2);
+        AesOptions options = new AesOptions(args, 3);
+        return submit(() -> FileCrypto.encrypt(fs, src, dst, deriveKey(key, options.kdf)));
+    }
+
+    @LuaFunction
+    public final int decryptFile(IArguments args) throws LuaException {
+        IFileSystem fs = fileSystem();
+        String src = args.getString(0);
+        String dst = args.getString(1);
+        String key = args.getString(2);
+        AesOptions options = new AesOptions(args, 3);
+        return submit(() -> FileCrypto.decrypt(fs, src, dst, deriveKey(key, options.kdf)));
+    }
+
+    private IFileSystem fileSystem() throws LuaException {
+        IFileSystem fs = computer == null ? null : ComputerFileSystems.get(computer.getID());
+        if (fs == null) {
+            throw new LuaException("This computer has no file system");
+        }
+        return fs;
+    }
+
+    private Key deriveKey(String key, String kdf) throws LuaException {
         try {
-            SecureRandom sr = SecureRandom.getInstanceStrong();
-            b = new byte[128];
-            sr.nextBytes(b);
-        } catch (NoSuchAlgorithmException ignored) {
+            return generateKey(key, kdf);
+        } catch (GeneralSecurityException e) {
+            throw new LuaException("Cannot derive key: " + e.getMessage());
+        }
+    }
+
+    @LuaFunction
+    public final Map<String, Object> getAsyncStats() {
+        return BackgroundTasks.CRYPTO.getStats();
+    }
+
+    private interface Task {
+        Object run() throws LuaException;
+    }
+
+    private int submit(Task task) throws LuaException {
+        if (computer == null) {
+            throw new LuaException("No computer to deliver the result to");
+        }
+        int id = nextTask.incrementAndGet();
+        ServerComputer target = computer;
+        boolean queued = BackgroundTasks.CRYPTO.submit(() -> {
+            Object[] event;
+            try {
+                event = new Object[]{id, true, task.run()};
+            } catch (LuaException | RuntimeException e) {
+                event = new Object[]{id, false, e.getMessage()};
+            }
+            target.queueEvent("CryptoTaskDone", event);
+        });
+        if (!queued) {
+            throw new LuaException("Too many crypto tasks queued");
         }
-        return bytesToHexString(b);
+        return id;
+    }
+
+    @LuaFunction
+    public final List<Object> hashBatch(IArguments args) throws LuaException {
+        String algorithm = hashAlgorithm(args.getString(0));
+        Format format = Codec.getFormat(args, 2);
+        List<String> messages = LuaArgs.getStrings(args.getTable(1));
+        checkBatchSize(messages.size());
+        byte[][] data = new byte[messages.size()][];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = toBytes(messages.get(i), format, StandardCharsets.UTF_8);
+        }
+        Object[] results = new Object[data.length];
+        CryptoBatch.forEach(data.length, i -> {
+            try {
+                results[i] = Codec.encode(CryptoEngines.digest(algorithm).digest(data[i]), format);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        return Arrays.asList(results);
+    }
+
+    // Each entry is {sig, pub, data} or {sig = ..., pub = ..., data = ...}; pub may be a key handle.
+    // Entries whose signature does not verify come back false, as do entries with a missing field,
+    // malformed encoding, bad public key or unknown handle; only a malformed list fails the whole call.
+    @LuaFunction
+    public final List<Boolean> verifyBatch(IArguments args) throws LuaException {
+        Format format = Codec.getFormat(args, 1);
+        List<Map<?, ?>> entries = LuaArgs.getTables(args.getTable(0));
+        checkBatchSize(entries.size());
+        byte[][] signatures = new byte[entries.size()][];
+        PublicKey[] publicKeys = new PublicKey[entries.size()];
+        byte[][] data = new byte[entries.size()][];
+        for (int i = 0; i < entries.size(); i++) {
+            Map<?, ?> entry = entries.get(i);
+            try {
+                signatures[i] = Codec.decode(LuaArgs.getString(entry, "sig", 1), format);
+                publicKeys[i] = keys.getPublic(LuaArgs.getString(entry, "pub", 2), format);
+                data[i] = toBytes(LuaArgs.getString(entry, "data", 3), format, Charset.defaultCharset());
+            } catch (LuaException e) {
+                // Left without a key, so the entry is reported false below.
+                publicKeys[i] = null;
+            }
+        }
+        Boolean[] results = new Boolean[entries.size()];
+        CryptoBatch.forEach(results.length, i -> {
+            if (publicKeys[i] == null) {
+                results[i] = false;
+                return;
+            }
+            boolean valid = false;
+            try {
+                Signature signature = CryptoEngines.signature();
+                signature.initVerify(publicKeys[i]);
+                signature.update(data[i]);
+                valid = signature.verify(signatures[i]);
+            } catch (Exception ignored) {
+            }
+            results[i] = valid;
+        });
+        return Arrays.asList(results);
+    }
+
+    private static String hashAlgorithm(String name) throws LuaException {
+        String algorithm = name.toUpperCase(Locale.ROOT);
+        if (!HASHES.contains(algorithm)) {
+            throw new LuaException("Unknown hash " + name + ", expected " + String.join(", ", HASHES));
+        }
+        return algorithm;
+    }
+
+    private static void checkBatchSize(int size) throws LuaException {
+        if (size > Cryptography.MAX_CRYPTO_BATCH) {
+            throw new LuaException("Batch too large (max " + Cryptography.MAX_CRYPTO_BATCH + ")");
+        }
+    }
+
+    // Table values arrive as strings; raw mode recovers their bytes exactly, like Codec.getData does for arguments.
+    private static byte[] toBytes(String value, Format format, Charset charset) {
+        return value.getBytes(format == Format.RAW ? StandardCharsets.ISO_8859_1 : charset);
+    }
+
+    @LuaFunction
+    public final String importPublicKey(IArguments args) throws LuaException {
+        return keys.importPublic(Codec.decode(args, 0, Codec.getFormat(args, 1)));
+    }
+
+    @LuaFunction
+    public final String importPrivateKey(IArguments args) throws LuaException {
+        return keys.importPrivate(Codec.decode(args, 0, Codec.getFormat(args, 1)));
+    }
+
+    @LuaFunction
+    public final boolean releaseKey(String handle) {
+        return keys.release(handle);
+    }
+
+    @LuaFunction
+    public final Object Salt(IArguments args) throws LuaException {
+        return Codec.encode(RandomPool.nextBytes(128), Codec.getFormat(args, 0));
+    }
+
+    @LuaFunction
+    public final Object randomBytes(IArguments args) throws LuaException {
+        int n = args.getInt(0);
+        if (n < 0 || n > Cryptography.MAX_RANDOM_BYTES) {
+            throw new LuaException("Byte count must be between 0 and " + Cryptography.MAX_RANDOM_BYTES);
+        }
+        return Codec.encode(RandomPool.nextBytes(n), Codec.getFormat(args, 1));
+    }
+
+    @LuaFunction
+    public final Map<String, Object> getRandomStats() {
+        return RandomPool.getStats();
     }
 }
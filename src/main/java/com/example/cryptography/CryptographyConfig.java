@@ -0,0 +1,27 @@
+package com.example.cryptography;
+
+import net.minecraftforge.common.ForgeConfigSpec;
+
+// Server settings, kept per world in serverconfig/cryptography-server.toml. The defaults are the
+// matching constants in Cryptography.
+public class CryptographyConfig {
+
+    public static final ForgeConfigSpec SPEC;
+    public static final ForgeConfigSpec.IntValue ENTITY_LOOKUP_MAX_RANGE;
+    public static final ForgeConfigSpec.IntValue WORLD_READ_TICK_BUDGET_MICROS;
+    public static final ForgeConfigSpec.IntValue PBKDF2_ITERATIONS;
+
+    static {
+        ForgeConfigSpec.Builder builder = new ForgeConfigSpec.Builder();
+        ENTITY_LOOKUP_MAX_RANGE = builder
+                .comment("Furthest distance in blocks from the computer at which getEntity and getEntitiesByUuid find an entity.")
+                .defineInRange("entityLookupMaxRange", Cryptography.ENTITY_LOOKUP_MAX_RANGE, 1, 30_000_000);
+        WORLD_READ_TICK_BUDGET_MICROS = builder
+                .comment("Server thread time in microseconds spent on computers' world reads each tick; the rest wait for the next tick.")
+                .defineInRange("worldReadTickBudgetMicros", (int) (Cryptography.WORLD_READ_TICK_BUDGET_NANOS / 1000), 100, 50_000);
+        PBKDF2_ITERATIONS = builder
+                .comment("PBKDF2 iterations for kdf = \"pbkdf2\". Changing it changes the keys, so data encrypted under the old value no longer decrypts.")
+                .defineInRange("pbkdf2Iterations", Cryptography.PBKDF2_ITERATIONS, 1000, 10_000_000);
+        SPEC = builder.build();
+    }
+}
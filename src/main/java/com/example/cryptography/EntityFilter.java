@@ -0,0 +1,107 @@
+package com.example.cryptography;
+
+import dan200.computercraft.api.lua.LuaException;
+import it.unimi.dsi.fastutil.objects.ReferenceOpenHashSet;
+import net.minecraft.core.registries.BuiltInRegistries;
+import net.minecraft.resources.ResourceLocation;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.EntityType;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.entity.player.Player;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Entity predicate parsed from a Lua table: {type = "minecraft:zombie" or a list of ids, living = bool,
+// player = bool, minHealth = n, maxHealth = n}. Unset fields match everything; a health bound only
+// matches living entities. Checks only read the entity, so they are cheap enough
+// to run before any record is built.
+public class EntityFilter {
+
+    public static final EntityFilter ANY = new EntityFilter(null, null, null, null, null);
+
+    private final Set<EntityType<?>> types;
+    private final Boolean living;
+    private final Boolean player;
+    private final Double minHealth;
+    private final Double maxHealth;
+
+    private EntityFilter(Set<EntityType<?>> types, Boolean living, Boolean player, Double minHealth, Double maxHealth) {
+        this.types = types;
+        this.living = living;
+        this.player = player;
+        this.minHealth = minHealth;
+        this.maxHealth = maxHealth;
+    }
+
+    public static EntityFilter parse(Map<?, ?> table) throws LuaException {
+        Set<EntityType<?>> types = null;
+        Object type = table.get("type");
+        if (type instanceof String) {
+            types = new ReferenceOpenHashSet<>();
+            types.add(entityType((String) type));
+        } else if (type instanceof Map) {
+            types = new ReferenceOpenHashSet<>();
+            List<String> ids = LuaArgs.getStrings((Map<?, ?>) type);
+            for (String id : ids) {
+                types.add(entityType(id));
+            }
+        } else if (type != null) {
+            throw new LuaException("Expected string or list of strings for type");
+        }
+        Double minHealth = optNumber(table, "minHealth");
+        Double maxHealth = optNumber(table, "maxHealth");
+        if (minHealth != null && maxHealth != null && minHealth > maxHealth) {
+            throw new LuaException("minHealth must not be greater than maxHealth");
+        }
+        return new EntityFilter(types, optBoolean(table, "living"), optBoolean(table, "player"), minHealth, maxHealth);
+    }
+
+    private static EntityType<?> entityType(String id) throws LuaException {
+        ResourceLocation location = ResourceLocation.tryParse(id);
+        if (location == null || !BuiltInRegistries.ENTITY_TYPE.containsKey(location)) {
+            throw new LuaException("Unknown entity type " + id);
+        }
+        return BuiltInRegistries.ENTITY_TYPE.get(location);
+    }
+
+    private static Boolean optBoolean(Map<?, ?> table, String key) throws LuaException {
+        Object value = table.get(key);
+        if (value != null && !(value instanceof Boolean)) {
+            throw new LuaException("Expected boolean for " + key);
+        }
+        return (Boolean) value;
+    }
+
+    private static Double optNumber(Map<?, ?> table, String key) throws LuaException {
+        Object value = table.get(key);
+        if (value == null) {
+            return null;
+        }
+        if (!(value instanceof Number) || Double.isNaN(((Number) value).doubleValue())) {
+            throw new LuaException("Expected number for " + key);
+        }
+        return ((Number) value).doubleValue();
+    }
+
+    public boolean test(Entity e) {
+        if (types != null && !types.contains(e.getType())) {
+            return false;
+        }
+        if (living != null && living != (e instanceof LivingEntity)) {
+            return false;
+        }
+        if (player != null && player != (e instanceof Player)) {
+            return false;
+        }
+        if (minHealth == null && maxHealth == null) {
+            return true;
+        }
+        if (!(e instanceof LivingEntity)) {
+            return false;
+        }
+        float health = ((LivingEntity) e).getHealth();
+        return (minHealth == null || health >= minHealth) && (maxHealth == null || health <= maxHealth);
+    }
+}
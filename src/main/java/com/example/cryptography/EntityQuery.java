@@ -0,0 +1,78 @@
+package com.example.cryptography;
+
+import dan200.computercraft.api.lua.IArguments;
+import dan200.computercraft.api.lua.LuaException;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+// Options table for the entity queries: the EntityFilter keys plus fields = {"uuid", "x", ...} to build
+// only those record fields, and limit = n to stop after n matches. The filter runs before anything is
+// allocated for an entity, so a narrow query costs little more than walking the candidates.
+public class EntityQuery {
+
+    public static final EntityQuery ALL = new EntityQuery(EntityFilter.ANY, null, Integer.MAX_VALUE);
+
+    public final EntityFilter filter;
+    public final int limit;
+    private final Set<String> fields;
+
+    private EntityQuery(EntityFilter filter, Set<String> fields, int limit) {
+        this.filter = filter;
+        this.fields = fields;
+        this.limit = limit;
+    }
+
+    // `known` is the field set of the record the caller builds; asking for anything else is an error
+    // rather than a silently missing key.
+    public static EntityQuery parse(IArguments args, int index, Set<String> known) throws LuaException {
+        Optional<Map<?, ?>> options = args.optTable(index);
+        if (options.isEmpty()) {
+            return ALL;
+        }
+        Map<?, ?> table = options.get();
+        Set<String> fields = null;
+        Object list = table.get("fields");
+        if (list instanceof Map) {
+            fields = new HashSet<>(LuaArgs.getStrings((Map<?, ?>) list));
+            for (String field : fields) {
+                if (!known.contains(field)) {
+                    throw new LuaException("Unknown field " + field);
+                }
+            }
+        } else if (list != null) {
+            throw new LuaException("Expected list of strings for fields");
+        }
+        int limit = Integer.MAX_VALUE;
+        Object value = table.get("limit");
+        if (value != null) {
+            if (!(value instanceof Number) || ((Number) value).doubleValue() < 1) {
+                throw new LuaException("limit must be a positive number");
+            }
+            limit = (int) Math.min(Integer.MAX_VALUE, ((Number) value).doubleValue());
+        }
+        return new EntityQuery(EntityFilter.parse(table), fields, limit);
+    }
+
+    public boolean isProjected() {
+        return fields != null;
+    }
+
+    public boolean wants(String field) {
+        return fields == null || fields.contains(field);
+    }
+
+    public boolean wantsAny(String... names) {
+        if (fields == null) {
+            return true;
+        }
+        for (String name : names) {
+            if (fields.contains(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.cryptography;
+
+import dan200.computercraft.shared.computer.core.ServerComputer;
+import it.unimi.dsi.fastutil.objects.Object2ObjectOpenHashMap;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.entity.Entity;
+import net.minecraft.world.entity.LivingEntity;
+import net.minecraft.world.phys.AABB;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Pushes entity changes around watching computers instead of having them poll getEntities. Every
+// ENTITY_WATCH_INTERVAL server ticks each watch looks at the cube of its radius around the computer and
+// queues at most one entity_watch event: a table {enter = {[uuid] = record}, update = {[uuid] = record},
+// leave = {uuid, ...}}. An entity counts as updated once it has moved minMove blocks from where it was last
+// reported or its health changed. Up to ENTITY_WATCH_MAX_TRACKED entities are tracked; ones already tracked
+// keep their place, and newcomers beyond the cap are ignored without events until there is room. Only the
+// server thread touches a watch's state; computers just add and remove watches.
+public class EntityWatcher {
+
+    private static final Set<Watch> WATCHES = ConcurrentHashMap.newKeySet();
+    private static int ticks;
+
+    public static final class Watch {
+        private final ComputerRegistry.Entry entry;
+        private final ServerComputer computer;
+        private final int radius;
+        private final EntityFilter filter;
+        private final double minMoveSqr;
+        private Map<UUID, Tracked> seen = new Object2ObjectOpenHashMap<>();
+        private ComputerPose pose;
+
+        private Watch(ComputerRegistry.Entry entry, ServerComputer computer, int radius, EntityFilter filter, double minMove) {
+            this.entry = entry;
+            this.computer = computer;
+            this.radius = radius;
+            this.filter = filter;
+            this.minMoveSqr = minMove * minMove;
+        }
+    }
+
+    // Where and how healthy an entity was when it was last reported.
+    private static final class Tracked {
+        private final double x, y, z;
+        private final float health;
+
+        private Tracked(Entity e) {
+            this.x = e.getX();
+            this.y = e.getY();
+            this.z = e.getZ();
+            this.health = health(e);
+        }
+
+        private boolean changed(Entity e, double minMoveSqr) {
+            return health != health(e) || e.distanceToSqr(x, y, z) >= minMoveSqr;
+        }
+
+        private static float health(Entity e) {
+            return e instanceof LivingEntity living ? living.getHealth() : 0;
+        }
+    }
+
+    public static Watch start(ComputerRegistry.Entry entry, ServerComputer computer, int radius, EntityFilter filter, double minMove) {
+        Watch watch = new Watch(entry, computer, radius, filter, minMove);
+        WATCHES.add(watch);
+        return watch;
+    }
+
+    public static boolean stop(Watch watch) {
+        return watch != null && WATCHES.remove(watch);
+    }
+
+    public static int count() {
+        return WATCHES.size();
+    }
+
+    public static void tick() {
+        if (++ticks % Cryptography.ENTITY_WATCH_INTERVAL != 0) {
+            return;
+        }
+        for (Iterator<Watch> it = WATCHES.iterator(); it.hasNext(); ) {
+            Watch watch = it.next();
+            if (!watch.entry.isRunning()) {
+                it.remove();
+                continue;
+            }
+            scan(watch);
+        }
+    }
+
+    private static void scan(Watch watch) {
+        ComputerRegistry.Location location = watch.entry.getLocation();
+        if (!(location.level instanceof ServerLevel level)) {
+            return;
+        }
+        ComputerPose pose = ComputerPose.of(watch.pose, location.pos, level);
+        watch.pose = pose;
+        int r = watch.radius;
+        AABB box = new AABB(pose.x - r, pose.y - r, pose.z - r, pose.x + r, pose.y + r, pose.z + r);
+        Map<UUID, Tracked> previous = watch.seen;
+        List<Entity> newcomers = new ArrayList<>();
+        Map<UUID, Tracked> current = new Object2ObjectOpenHashMap<>(Math.max(16, previous.size()));
+        Map<String, Object> enter = new HashMap<>();
+        Map<String, Object> update = new HashMap<>();
+        level.getEntities().get(box, e -> {
+            if (!e.isAlive() || !watch.filter.test(e)) {
+                return;
+            }
+            UUID uuid = e.getUUID();
+            Tracked before = previous.remove(uuid);
+            if (before == null) {
+                newcomers.add(e);
+            } else if (before.changed(e, watch.minMoveSqr)) {
+                current.put(uuid, new Tracked(e));
+                update.put(uuid.toString(), CoordinateAPI.buildEntityRecord(e, uuid.toString()));
+            } else {
+                current.put(uuid, before);
+            }
+        });
+        // Already tracked entities were placed first, so the cap only ever turns newcomers away.
+        for (Entity e : newcomers) {
+            if (current.size() >= Cryptography.ENTITY_WATCH_MAX_TRACKED) {
+                break;
+            }
+            UUID uuid = e.getUUID();
+            current.put(uuid, new Tracked(e));
+            enter.put(uuid.toString(), CoordinateAPI.buildEntityRecord(e, uuid.toString()));
+        }
+        List<String> leave = new ArrayList<>(previous.size());
+        for (UUID gone : previous.keySet()) {
+            leave.add(gone.toString());
+        }
+        if (!enter.isEmpty() || !update.isEmpty() || !leave.isEmpty()) {
+            Map<String, Object> changes = new HashMap<>();
+            changes.put("enter", enter);
+            changes.put("update", update);
+            changes.put("leave", leave);
+            watch.computer.queueEvent("entity_watch", new Object[]{changes});
+        }
+        watch.seen = current;
+    }
+}
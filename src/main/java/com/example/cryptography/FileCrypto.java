@@ -0,0 +1,160 @@
+package com.example.cryptography;
+
+import dan200.computercraft.api.filesystem.IFileSystem;
+import dan200.computercraft.api.lua.LuaException;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.OpenOption;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.MessageDigest;
+import java.util.Set;
+
+// Streams files on a computer's own disk through a digest or AES-GCM in FILE_CHUNK_SIZE pieces. Encrypted
+// files use the same layout as AESGCMEncrypt output: a 12 byte IV followed by the ciphertext and tag.
+// These run on the crypto pool, so they use the worker's per-thread engines.
+public class FileCrypto {
+
+    private static final int GCM_IV_LENGTH = 12;
+    private static final int TLEN = 128;
+    private static final Set<OpenOption> WRITE = Set.of(StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+
+    public static byte[] hash(IFileSystem fs, String path, String algorithm) throws LuaException {
+        try (SeekableByteChannel in = openRead(fs, path)) {
+            MessageDigest digest = CryptoEngines.digest(algorithm);
+            ByteBuffer buffer = ByteBuffer.allocate(Cryptography.FILE_CHUNK_SIZE);
+            while (in.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            return digest.digest();
+        } catch (IOException | GeneralSecurityException e) {
+            throw new LuaException(path + ": " + e.getMessage());
+        }
+    }
+
+    public static long encrypt(IFileSystem fs, String src, String dst, Key key) throws LuaException {
+        checkDistinct(fs, src, dst);
+        byte[] iv = new byte[GCM_IV_LENGTH];
+        CryptoEngines.nextIv(iv);
+        Cipher cipher = CryptoEngines.aesGcm();
+        try {
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TLEN, iv));
+        } catch (GeneralSecurityException e) {
+            throw new LuaException("Cannot initialise cipher: " + e.getMessage());
+        }
+        try (SeekableByteChannel in = openRead(fs, src)) {
+            // Anything larger could not be decrypted again, see decrypt.
+            checkSize(src, in.size());
+            return writeTo(fs, dst, out -> {
+                writeFully(out, ByteBuffer.wrap(iv));
+                return GCM_IV_LENGTH + pipe(in, out, cipher);
+            });
+        } catch (IOException | GeneralSecurityException e) {
+            throw new LuaException(src + ": " + e.getMessage());
+        }
+    }
+
+    // GCM only authenticates at the end, and the JDK holds the plaintext back until then, so nothing
+    // unauthenticated reaches dst. A failed tag check leaves no output file behind. Holding it back
+    // means the whole file sits in memory, so files are capped at MAX_STREAM_DECRYPT_SIZE.
+    public static long decrypt(IFileSystem fs, String src, String dst, Key key) throws LuaException {
+        checkDistinct(fs, src, dst);
+        try (SeekableByteChannel in = openRead(fs, src)) {
+            checkSize(src, in.size() - GCM_IV_LENGTH - TLEN / 8);
+            ByteBuffer iv = ByteBuffer.allocate(GCM_IV_LENGTH);
+            while (iv.hasRemaining()) {
+                if (in.read(iv) < 0) {
+                    throw new LuaException(src + ": ciphertext too short");
+                }
+            }
+            Cipher cipher = CryptoEngines.aesGcm();
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TLEN, iv.array()));
+            return writeTo(fs, dst, out -> pipe(in, out, cipher));
+        } catch (IOException e) {
+            throw new LuaException(src + ": " + e.getMessage());
+        } catch (GeneralSecurityException e) {
+            throw new LuaException(src + ": wrong key or corrupted file");
+        }
+    }
+
+    // Writing truncates dst while src is still being read, so the two must not be the same file.
+    private static void checkDistinct(IFileSystem fs, String src, String dst) throws LuaException {
+        if (fs.combine(src, "").equals(fs.combine(dst, ""))) {
+            throw new LuaException(dst + ": source and destination are the same file");
+        }
+    }
+
+    @FunctionalInterface
+    private interface Writer {
+        long write(SeekableByteChannel out) throws IOException, GeneralSecurityException;
+    }
+
+    // dst is only removed after this call has opened it, so a failure before that, such as a missing
+    // source, leaves an existing file alone.
+    private static long writeTo(IFileSystem fs, String dst, Writer writer) throws IOException, GeneralSecurityException {
+        SeekableByteChannel out = openWrite(fs, dst);
+        try (out) {
+            return writer.write(out);
+        } catch (IOException | GeneralSecurityException | RuntimeException e) {
+            deleteQuietly(fs, dst);
+            throw e;
+        }
+    }
+
+    private static void checkSize(String path, long plaintext) throws LuaException {
+        if (plaintext > Cryptography.MAX_STREAM_DECRYPT_SIZE) {
+            throw new LuaException(path + ": file too large (max " + Cryptography.MAX_STREAM_DECRYPT_SIZE + " bytes)");
+        }
+    }
+
+    private static long pipe(SeekableByteChannel in, SeekableByteChannel out, Cipher cipher) throws IOException, GeneralSecurityException {
+        ByteBuffer input = ByteBuffer.allocate(Cryptography.FILE_CHUNK_SIZE);
+        ByteBuffer output = ByteBuffer.allocate(cipher.getOutputSize(Cryptography.FILE_CHUNK_SIZE));
+        long written = 0;
+        while (in.read(input) >= 0) {
+            input.flip();
+            output.clear();
+            cipher.update(input, output);
+            output.flip();
+            written += writeFully(out, output);
+            input.clear();
+        }
+        output = ByteBuffer.allocate(cipher.getOutputSize(0));
+        cipher.doFinal(ByteBuffer.allocate(0), output);
+        output.flip();
+        return written + writeFully(out, output);
+    }
+
+    private static int writeFully(SeekableByteChannel out, ByteBuffer buffer) throws IOException {
+        int n = buffer.remaining();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        return n;
+    }
+
+    private static SeekableByteChannel openRead(IFileSystem fs, String path) throws IOException {
+        if (!fs.exists(path) || fs.isDirectory(path)) {
+            throw new IOException("No such file");
+        }
+        return fs.openForRead(path);
+    }
+
+    private static SeekableByteChannel openWrite(IFileSystem fs, String path) throws IOException {
+        return fs.openFile(path, WRITE);
+    }
+
+    private static void deleteQuietly(IFileSystem fs, String path) {
+        try {
+            fs.delete(path);
+        } catch (IOException ignored) {
+        }
+    }
+}
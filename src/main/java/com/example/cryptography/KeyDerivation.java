@@ -0,0 +1,108 @@
+package com.example.cryptography;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class KeyDerivation {
+
+    public static final String LEGACY = "legacy";
+    public static final String PBKDF2 = "pbkdf2";
+    public static final String HKDF = "hkdf";
+
+    private static final int AES_KEY_SIZE = 256;
+    private static final byte[] SALT = "metaphysics.aes-gcm".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] HKDF_INFO = "metaphysics.aes-256-gcm".getBytes(StandardCharsets.UTF_8);
+
+    // Keyed by a digest of the mode, cost and passphrase, so passphrases never sit in the map.
+    private static final Map<String, SecretKey> CACHE = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, SecretKey> eldest) {
+            return size() > Cryptography.KEY_CACHE_SIZE;
+        }
+    });
+
+    public static boolean isSupported(String kdf) {
+        return LEGACY.equals(kdf) || PBKDF2.equals(kdf) || HKDF.equals(kdf);
+    }
+
+    public static SecretKey derive(String passphrase, String kdf) throws GeneralSecurityException {
+        // Read once, so the cache key and the derivation agree even if the config changes meanwhile.
+        int iterations = CryptographyConfig.PBKDF2_ITERATIONS.get();
+        String cacheKey = cacheKey(passphrase, kdf, iterations);
+        SecretKey key = CACHE.get(cacheKey);
+        if (key == null) {
+            key = switch (kdf) {
+                case LEGACY -> legacy(passphrase);
+                case PBKDF2 -> pbkdf2(passphrase, iterations);
+                case HKDF -> hkdf(passphrase.getBytes(StandardCharsets.UTF_8));
+                default -> throw new GeneralSecurityException("Unknown key derivation " + kdf);
+            };
+            CACHE.put(cacheKey, key);
+        }
+        return key;
+    }
+
+    private static String cacheKey(String passphrase, String kdf, int iterations) throws GeneralSecurityException {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        digest.update((kdf + ":" + iterations + ":").getBytes(StandardCharsets.UTF_8));
+        digest.update(passphrase.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(digest.digest());
+    }
+
+    // The original derivation: AES KeyGenerator fed by a SHA1PRNG seeded with the passphrase. It relies
+    // on the SUN provider's SHA1PRNG being deterministic and is only kept so existing ciphertexts decrypt.
+    private static SecretKey legacy(String passphrase) throws GeneralSecurityException {
+        KeyGenerator kg = KeyGenerator.getInstance("AES");
+        SecureRandom sr = SecureRandom.getInstance("SHA1PRNG", "SUN");
+        sr.setSeed(passphrase.getBytes(StandardCharsets.UTF_8));
+        kg.init(AES_KEY_SIZE, sr);
+        return kg.generateKey();
+    }
+
+    private static SecretKey pbkdf2(String passphrase, int iterations) throws GeneralSecurityException {
+        PBEKeySpec spec = new PBEKeySpec(passphrase.toCharArray(), SALT, iterations, AES_KEY_SIZE);
+        try {
+            byte[] bytes = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256").generateSecret(spec).getEncoded();
+            return new SecretKeySpec(bytes, "AES");
+        } finally {
+            spec.clearPassword();
+        }
+    }
+
+    // RFC 5869 with SHA-256. Meant for inputs that already carry full entropy, such as ECDH secrets.
+    public static SecretKey hkdf(byte[] input) throws GeneralSecurityException {
+        return new SecretKeySpec(hkdf(input, SALT, HKDF_INFO, AES_KEY_SIZE / 8), "AES");
+    }
+
+    public static byte[] hkdf(byte[] input, byte[] salt, byte[] info, int length) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(new SecretKeySpec(salt, "HmacSHA256"));
+        byte[] prk = mac.doFinal(input);
+        mac.init(new SecretKeySpec(prk, "HmacSHA256"));
+        byte[] out = new byte[length];
+        byte[] block = new byte[0];
+        int offset = 0;
+        for (int i = 1; offset < length; i++) {
+            mac.update(block);
+            mac.update(info);
+            mac.update((byte) i);
+            block = mac.doFinal();
+            int n = Math.min(block.length, length - offset);
+            System.arraycopy(block, 0, out, offset, n);
+            offset += n;
+        }
+        return out;
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.cryptography;
+
+import com.example.cryptography.Codec.Format;
+import dan200.computercraft.api.lua.LuaException;
+
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Parsed EC keys for one computer. Imported keys are named by opaque "key#N" handles, which belong to
+// the script and stay valid until it releases them; importing past MAX_KEY_HANDLES is an error rather
+// than a silent eviction. Keys passed encoded are parsed once and kept in a separate LRU cache keyed by
+// a digest of the encoding, so repeated calls with the same key skip the ASN.1 parse either way.
+public class KeyStore {
+
+    public static final String HANDLE_PREFIX = "key#";
+
+    private final Map<String, Key> handles = new HashMap<>();
+    private final Map<String, Key> parsed = lruMap();
+    private int nextHandle = 1;
+
+    private static Map<String, Key> lruMap() {
+        return Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Key> eldest) {
+                return size() > Cryptography.KEY_PARSE_CACHE_SIZE;
+            }
+        });
+    }
+
+    public static boolean isHandle(String value) {
+        return value.startsWith(HANDLE_PREFIX);
+    }
+
+    public String importPublic(byte[] encoded) throws LuaException {
+        return register(parsePublic(encoded));
+    }
+
+    public String importPrivate(byte[] encoded) throws LuaException {
+        return register(parsePrivate(encoded));
+    }
+
+    private synchronized String register(Key key) throws LuaException {
+        if (handles.size() >= Cryptography.MAX_KEY_HANDLES) {
+            throw new LuaException("Too many key handles (max " + Cryptography.MAX_KEY_HANDLES + "), release unused ones with releaseKey");
+        }
+        String handle = HANDLE_PREFIX + nextHandle++;
+        handles.put(handle, key);
+        return handle;
+    }
+
+    public synchronized boolean release(String handle) {
+        return handles.remove(handle) != null;
+    }
+
+    public synchronized int size() {
+        return handles.size();
+    }
+
+    private synchronized Key handle(String handle) {
+        return handles.get(handle);
+    }
+
+    public PublicKey getPublic(String value, Format format) throws LuaException {
+        if (isHandle(value)) {
+            if (handle(value) instanceof PublicKey key) {
+                return key;
+            }
+            throw new LuaException(value + " is not a public key handle");
+        }
+        return parsePublic(Codec.decode(value, format));
+    }
+
+    public PrivateKey getPrivate(String value, Format format) throws LuaException {
+        if (isHandle(value)) {
+            if (handle(value) instanceof PrivateKey key) {
+                return key;
+            }
+            throw new LuaException(value + " is not a private key handle");
+        }
+        return parsePrivate(Codec.decode(value, format));
+    }
+
+    private PublicKey parsePublic(byte[] encoded) throws LuaException {
+        String cacheKey = cacheKey("pub:", encoded);
+        if (parsed.get(cacheKey) instanceof PublicKey key) {
+            return key;
+        }
+        try {
+            PublicKey key = CryptoEngines.ecKeyFactory().generatePublic(new X509EncodedKeySpec(encoded));
+            parsed.put(cacheKey, key);
+            return key;
+        } catch (InvalidKeySpecException e) {
+            throw new LuaException("Invalid public key");
+        }
+    }
+
+    private PrivateKey parsePrivate(byte[] encoded) throws LuaException {
+        String cacheKey = cacheKey("pri:", encoded);
+        if (parsed.get(cacheKey) instanceof PrivateKey key) {
+            return key;
+        }
+        try {
+            PrivateKey key = CryptoEngines.ecKeyFactory().generatePrivate(new PKCS8EncodedKeySpec(encoded));
+            parsed.put(cacheKey, key);
+            return key;
+        } catch (InvalidKeySpecException e) {
+            throw new LuaException("Invalid private key");
+        }
+    }
+
+    // A digest rather than the encoding itself, so key material is not copied into map keys.
+    private static String cacheKey(String kind, byte[] encoded) {
+        try {
+            return kind + Base64.getEncoder().encodeToString(CryptoEngines.digest("SHA-256").digest(encoded));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
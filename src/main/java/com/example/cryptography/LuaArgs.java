@@ -0,0 +1,61 @@
+package com.example.cryptography;
+
+import dan200.computercraft.api.lua.LuaException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class LuaArgs {
+
+    // Reads a field given either by name or by list position, so {x = 1, y = 2, z = 3} and {1, 2, 3} both work.
+    public static int getInt(Map<?, ?> table, String key, int index) throws LuaException {
+        Object value = table.get(key);
+        if (value == null) {
+            value = table.get((double) index);
+        }
+        if (!(value instanceof Number)) {
+            throw new LuaException("Expected number for " + key);
+        }
+        double d = ((Number) value).doubleValue();
+        if (Double.isNaN(d) || Double.isInfinite(d)) {
+            throw new LuaException("Expected finite number for " + key);
+        }
+        return (int) Math.floor(d);
+    }
+
+    public static String getString(Map<?, ?> table, String key, int index) throws LuaException {
+        Object value = table.get(key);
+        if (value == null) {
+            value = table.get((double) index);
+        }
+        if (!(value instanceof String)) {
+            throw new LuaException("Expected string for " + key);
+        }
+        return (String) value;
+    }
+
+    public static List<Map<?, ?>> getTables(Map<?, ?> list) throws LuaException {
+        List<Map<?, ?>> tables = new ArrayList<>(list.size());
+        for (int i = 1; i <= list.size(); i++) {
+            Object value = list.get((double) i);
+            if (!(value instanceof Map)) {
+                throw new LuaException("Expected table at index " + i);
+            }
+            tables.add((Map<?, ?>) value);
+        }
+        return tables;
+    }
+
+    public static List<String> getStrings(Map<?, ?> list) throws LuaException {
+        List<String> strings = new ArrayList<>(list.size());
+        for (int i = 1; i <= list.size(); i++) {
+            Object value = list.get((double) i);
+            if (!(value instanceof String)) {
+                throw new LuaException("Expected string at index " + i);
+            }
+            strings.add((String) value);
+        }
+        return strings;
+    }
+}
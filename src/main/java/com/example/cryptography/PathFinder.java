@@ -0,0 +1,248 @@
+package com.example.cryptography;
+
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2LongOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.ChunkPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.level.block.state.BlockState;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.chunk.LevelChunkSection;
+import net.minecraft.world.level.chunk.PalettedContainer;
+
+import java.util.Arrays;
+
+public class PathFinder {
+
+    private static final int[][] DIRECTIONS = {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+
+    private final Level level;
+    private final boolean allowReplaceable;
+    private final boolean allowNonSolid;
+    private final boolean dig;
+    private final int digCost;
+    // Block states are read from copies of each chunk's sections, taken the first time the search
+    // reaches the chunk. An empty array marks a chunk that was not loaded. Once frozen, no more copies
+    // are taken and anything outside the copied area is impassable, so the search may run off-thread.
+    private final Long2ObjectOpenHashMap<PalettedContainer<BlockState>[]> chunks = new Long2ObjectOpenHashMap<>();
+    private boolean frozen;
+    private int expanded;
+    private int areaMinCx, areaMinCz, areaChunksX, areaMinY, areaMaxY;
+
+    public PathFinder(Level level, boolean allowReplaceable, boolean allowNonSolid, boolean dig, int digCost) {
+        this.level = level;
+        this.allowReplaceable = allowReplaceable;
+        this.allowNonSolid = allowNonSolid;
+        this.dig = dig;
+        this.digCost = digCost;
+    }
+
+    public int getExpanded() {
+        return expanded;
+    }
+
+    // Freezing copies the box spanning both ends, grown by margin blocks, one chunk column at a time so
+    // the copy can be spread over server ticks. setArea sizes the box and returns its column count,
+    // copyColumn must run on the server thread, and freeze stops any further copies.
+    public long setArea(BlockPos from, BlockPos to, int margin) {
+        areaMinCx = (Math.min(from.getX(), to.getX()) - margin) >> 4;
+        areaMinCz = (Math.min(from.getZ(), to.getZ()) - margin) >> 4;
+        areaChunksX = ((Math.max(from.getX(), to.getX()) + margin) >> 4) - areaMinCx + 1;
+        int chunksZ = ((Math.max(from.getZ(), to.getZ()) + margin) >> 4) - areaMinCz + 1;
+        areaMinY = Math.min(from.getY(), to.getY()) - margin;
+        areaMaxY = Math.max(from.getY(), to.getY()) + margin;
+        return (long) areaChunksX * chunksZ;
+    }
+
+    public void copyColumn(int index) {
+        int cx = areaMinCx + index % areaChunksX;
+        int cz = areaMinCz + index / areaChunksX;
+        chunks.put(ChunkPos.asLong(cx, cz), snapshot(cx, cz, areaMinY, areaMaxY));
+    }
+
+    public void freeze() {
+        frozen = true;
+    }
+
+    // Returns the goal node, whose parents lead back to the start, or null when no path was found
+    // within maxNodes expansions.
+    public Node search(BlockPos from, BlockPos to, int maxNodes) {
+        long start = from.asLong();
+        long goal = to.asLong();
+        if (enterCost(goal) < 0) {
+            return null;
+        }
+        LongHeap open = new LongHeap();
+        LongOpenHashSet closed = new LongOpenHashSet();
+        Long2IntOpenHashMap gScore = new Long2IntOpenHashMap();
+        Long2LongOpenHashMap parents = new Long2LongOpenHashMap();
+        gScore.defaultReturnValue(Integer.MAX_VALUE);
+        gScore.put(start, 0);
+        open.push(start, heuristic(start, goal));
+        while (open.size > 0) {
+            long current = open.pop();
+            if (current == goal) {
+                return toNode(start, goal, parents);
+            }
+            if (!closed.add(current)) {
+                continue;
+            }
+            if (++expanded > maxNodes) {
+                return null;
+            }
+            int g = gScore.get(current);
+            for (int[] d : DIRECTIONS) {
+                long next = BlockPos.offset(current, d[0], d[1], d[2]);
+                if (closed.contains(next)) {
+                    continue;
+                }
+                int cost = enterCost(next);
+                if (cost < 0) {
+                    continue;
+                }
+                int tentative = g + cost;
+                if (tentative < gScore.get(next)) {
+                    gScore.put(next, tentative);
+                    parents.put(next, current);
+                    // Stale heap entries are left behind and skipped through the closed set.
+                    open.push(next, tentative + heuristic(next, goal));
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Node toNode(long start, long goal, Long2LongOpenHashMap parents) {
+        long[] chain = new long[16];
+        int length = 0;
+        for (long p = goal; ; p = parents.get(p)) {
+            if (length == chain.length) {
+                chain = Arrays.copyOf(chain, length * 2);
+            }
+            chain[length++] = p;
+            if (p == start) {
+                break;
+            }
+        }
+        Node node = null;
+        for (int i = length - 1; i >= 0; i--) {
+            node = new Node(BlockPos.getX(chain[i]), BlockPos.getY(chain[i]), BlockPos.getZ(chain[i]), node);
+        }
+        return node;
+    }
+
+    private static int heuristic(long pos, long goal) {
+        return Math.abs(BlockPos.getX(pos) - BlockPos.getX(goal)) + Math.abs(BlockPos.getY(pos) - BlockPos.getY(goal)) + Math.abs(BlockPos.getZ(pos) - BlockPos.getZ(goal));
+    }
+
+    private int enterCost(long pos) {
+        BlockState state = getState(pos);
+        if (state == null) {
+            return -1;
+        }
+        if (state.isAir()) {
+            return 1;
+        }
+        if (allowReplaceable && state.canBeReplaced()) {
+            return 1;
+        }
+        if (allowNonSolid && !state.isSolid()) {
+            return 1;
+        }
+        if (dig && state.getBlock().defaultDestroyTime() >= 0) {
+            return 1 + digCost;
+        }
+        return -1;
+    }
+
+    private BlockState getState(long pos) {
+        int x = BlockPos.getX(pos);
+        int y = BlockPos.getY(pos);
+        int z = BlockPos.getZ(pos);
+        if (y < level.getMinBuildHeight() || y >= level.getMaxBuildHeight()) {
+            return null;
+        }
+        long key = ChunkPos.asLong(x >> 4, z >> 4);
+        PalettedContainer<BlockState>[] sections = chunks.get(key);
+        if (sections == null) {
+            if (frozen) {
+                return null;
+            }
+            sections = snapshot(x >> 4, z >> 4, level.getMinBuildHeight(), level.getMaxBuildHeight() - 1);
+            chunks.put(key, sections);
+        }
+        int index = level.getSectionIndex(y);
+        if (index >= sections.length || sections[index] == null) {
+            return null;
+        }
+        return sections[index].get(x & 15, y & 15, z & 15);
+    }
+
+    @SuppressWarnings("unchecked")
+    private PalettedContainer<BlockState>[] snapshot(int cx, int cz, int minY, int maxY) {
+        if (!level.hasChunk(cx, cz)) {
+            return new PalettedContainer[0];
+        }
+        LevelChunk chunk = level.getChunk(cx, cz);
+        LevelChunkSection[] sections = chunk.getSections();
+        PalettedContainer<BlockState>[] states = new PalettedContainer[sections.length];
+        int first = Math.max(0, level.getSectionIndex(minY));
+        int last = Math.min(sections.length - 1, level.getSectionIndex(maxY));
+        for (int i = first; i <= last; i++) {
+            states[i] = sections[i].getStates().copy();
+        }
+        return states;
+    }
+
+    private static final class LongHeap {
+        private long[] values = new long[64];
+        private int[] keys = new int[64];
+        private int size;
+
+        private void push(long value, int key) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >> 1;
+                if (keys[parent] <= key) {
+                    break;
+                }
+                values[i] = values[parent];
+                keys[i] = keys[parent];
+                i = parent;
+            }
+            values[i] = value;
+            keys[i] = key;
+        }
+
+        private long pop() {
+            long top = values[0];
+            long value = values[--size];
+            int key = keys[size];
+            int i = 0;
+            while (true) {
+                int child = (i << 1) + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && keys[child + 1] < keys[child]) {
+                    child++;
+                }
+                if (keys[child] >= key) {
+                    break;
+                }
+                values[i] = values[child];
+                keys[i] = keys[child];
+                i = child;
+            }
+            values[i] = value;
+            keys[i] = key;
+            return top;
+        }
+    }
+}
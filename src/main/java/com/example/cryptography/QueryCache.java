@@ -0,0 +1,134 @@
+package com.example.cryptography;
+
+import net.minecraft.resources.ResourceKey;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.AABB;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+public class QueryCache {
+
+    public enum Kind { ENTITIES, PLAYERS, SHIPS }
+
+    private static final Map<Kind, Map<ResourceKey<Level>, Snapshots>> SNAPSHOTS = new EnumMap<>(Kind.class);
+    private static final Map<Kind, AtomicLong> HITS = new EnumMap<>(Kind.class);
+    private static final Map<Kind, AtomicLong> MISSES = new EnumMap<>(Kind.class);
+
+    static {
+        for (Kind kind : Kind.values()) {
+            SNAPSHOTS.put(kind, new ConcurrentHashMap<>());
+            HITS.put(kind, new AtomicLong());
+            MISSES.put(kind, new AtomicLong());
+        }
+    }
+
+    private static final class Snapshot {
+        private final AABB region;
+        private final Object items;
+
+        private Snapshot(AABB region, Object items) {
+            this.region = region;
+            this.items = items;
+        }
+
+        // A dimension-wide snapshot only answers dimension-wide queries, so a small box never pays for
+        // walking everything just because someone else asked for everything this tick.
+        private boolean covers(@Nullable AABB box) {
+            if (region == null || box == null) {
+                return region == null && box == null;
+            }
+            return region.minX <= box.minX && region.minY <= box.minY && region.minZ <= box.minZ
+                    && region.maxX >= box.maxX && region.maxY >= box.maxY && region.maxZ >= box.maxZ;
+        }
+    }
+
+    // This tick's snapshots for one dimension. Never modified; adding one replaces the whole entry.
+    private static final class Snapshots {
+        private final int tick;
+        private final List<Snapshot> list;
+
+        private Snapshots(int tick, List<Snapshot> list) {
+            this.tick = tick;
+            this.list = list;
+        }
+
+        private Snapshot find(int tick, @Nullable AABB box) {
+            if (this.tick != tick) {
+                return null;
+            }
+            for (Snapshot snapshot : list) {
+                if (snapshot.covers(box)) {
+                    return snapshot;
+                }
+            }
+            return null;
+        }
+    }
+
+    // A null box or region stands for the whole dimension. The returned items are shared with every
+    // computer asking during the same tick, so callers only read them and cut their own result out.
+    @SuppressWarnings("unchecked")
+    public static <T> List<T> get(Level level, Kind kind, @Nullable AABB box, Function<AABB, List<T>> scanner) {
+        return (List<T>) lookup(level, kind, box, scanner);
+    }
+
+    // For snapshots that are a structure over the whole dimension rather than a list, such as the ship index.
+    @SuppressWarnings("unchecked")
+    public static <T> T getShared(Level level, Kind kind, Function<Level, T> builder) {
+        return (T) lookup(level, kind, null, region -> builder.apply(level));
+    }
+
+    // Each miss scans only the box asked for and keeps it beside the tick's other snapshots, instead of
+    // widening one snapshot to the union of far-apart boxes. Past QUERY_CACHE_MAX_SNAPSHOTS boxes in a
+    // tick, further scans are served but not kept.
+    private static Object lookup(Level level, Kind kind, @Nullable AABB box, Function<AABB, ?> scanner) {
+        int tick = level.getServer().getTickCount();
+        Map<ResourceKey<Level>, Snapshots> snapshots = SNAPSHOTS.get(kind);
+        Snapshots cached = snapshots.get(level.dimension());
+        Snapshot hit = cached == null ? null : cached.find(tick, box);
+        if (hit != null) {
+            HITS.get(kind).incrementAndGet();
+            return hit.items;
+        }
+        Object[] items = new Object[1];
+        snapshots.compute(level.dimension(), (dimension, old) -> {
+            Snapshot found = old == null ? null : old.find(tick, box);
+            if (found != null) {
+                // Another computer scanned while this one was waiting on the entry.
+                HITS.get(kind).incrementAndGet();
+                items[0] = found.items;
+                return old;
+            }
+            MISSES.get(kind).incrementAndGet();
+            items[0] = scanner.apply(box);
+            List<Snapshot> list = old != null && old.tick == tick ? old.list : List.of();
+            if (list.size() >= Cryptography.QUERY_CACHE_MAX_SNAPSHOTS) {
+                return old;
+            }
+            List<Snapshot> grown = new ArrayList<>(list.size() + 1);
+            grown.addAll(list);
+            grown.add(new Snapshot(box, items[0]));
+            return new Snapshots(tick, grown);
+        });
+        return items[0];
+    }
+
+    public static Map<String, Map<String, Long>> getStats() {
+        Map<String, Map<String, Long>> stats = new HashMap<>();
+        for (Kind kind : Kind.values()) {
+            Map<String, Long> counters = new HashMap<>();
+            counters.put("hits", HITS.get(kind).get());
+            counters.put("misses", MISSES.get(kind).get());
+            stats.put(kind.name().toLowerCase(), counters);
+        }
+        return stats;
+    }
+}
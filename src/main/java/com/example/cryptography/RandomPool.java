@@ -0,0 +1,182 @@
+package com.example.cryptography;
+
+import java.nio.charset.StandardCharsets;
+import java.security.DrbgParameters;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Shared source for salts, IVs and crypto.randomBytes. Callers claim disjoint slices of a prefilled
+// block with a single atomic add, so no byte is handed out twice and nobody waits on a lock. A caller
+// that finds the block used up draws from a DRBG of its own that the refill never touches. Every
+// generator is built, seeded and warmed on the background thread before it is published, and reseeding
+// means publishing a fresh pair rather than reseeding one in use, so the slow entropy gathering never
+// happens on a caller's thread. Only a caller arriving before the very first pair is ready waits for it.
+public class RandomPool {
+
+    private static final ExecutorService REFILLER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Metaphysics-Random");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static final CompletableFuture<Void> READY = new CompletableFuture<>();
+    private static final AtomicBoolean REFILLING = new AtomicBoolean();
+
+    private static final long STARTED = System.nanoTime();
+    private static final AtomicLong SERVED = new AtomicLong();
+    private static final AtomicLong POOLED = new AtomicLong();
+    private static final AtomicLong DIRECT = new AtomicLong();
+    private static final AtomicLong REFILLS = new AtomicLong();
+    private static final AtomicLong RESEEDS = new AtomicLong();
+    private static final AtomicLong SINCE_RESEED = new AtomicLong();
+    private static final AtomicLong REFILL_NANOS = new AtomicLong();
+    private static volatile boolean strongSeeded;
+
+    // Callers draw from `direct`; only the background thread uses `refill`.
+    private static volatile SecureRandom direct;
+    private static SecureRandom refill;
+    private static volatile Block block = new Block(new byte[0]);
+
+    private static final class Block {
+        private final byte[] data;
+        private final AtomicInteger claimed = new AtomicInteger();
+
+        private Block(byte[] data) {
+            this.data = data;
+        }
+    }
+
+    static {
+        REFILLER.execute(() -> {
+            publish(false);
+            READY.complete(null);
+        });
+        requestRefill();
+        // The strong source may block for a while; until it answers the system-seeded pair serves.
+        REFILLER.execute(() -> publish(true));
+    }
+
+    // Forces the class to load, so the first generators are built before any computer asks for bytes.
+    public static void init() {
+    }
+
+    private static SecureRandom createDrbg(boolean strong) {
+        SecureRandom random;
+        try {
+            byte[] personalization = "metaphysics.random-pool".getBytes(StandardCharsets.UTF_8);
+            random = SecureRandom.getInstance("DRBG", DrbgParameters.instantiation(256, DrbgParameters.Capability.RESEED_ONLY, personalization));
+        } catch (GeneralSecurityException e) {
+            random = new SecureRandom();
+        }
+        if (strong) {
+            try {
+                random.setSeed(SecureRandom.getInstanceStrong().generateSeed(32));
+            } catch (GeneralSecurityException ignored) {
+            }
+        }
+        // The DRBG gathers its entropy on first use; do that here rather than on a caller's thread.
+        random.nextBytes(new byte[1]);
+        return random;
+    }
+
+    // Runs on the background thread only.
+    private static void publish(boolean strong) {
+        refill = createDrbg(strong);
+        direct = createDrbg(strong);
+        if (strong) {
+            strongSeeded = true;
+        }
+    }
+
+    public static void nextBytes(byte[] out) {
+        int n = out.length;
+        if (n <= Cryptography.RANDOM_POOL_SIZE / 4) {
+            Block current = block;
+            int start = current.claimed.getAndAdd(n);
+            if (start >= 0 && start <= current.data.length - n) {
+                System.arraycopy(current.data, start, out, 0, n);
+                if (start + n > current.data.length / 2) {
+                    // Start the next block early so steady demand rarely falls through to the DRBG.
+                    requestRefill();
+                }
+                POOLED.incrementAndGet();
+                served(n);
+                return;
+            }
+            requestRefill();
+        }
+        SecureRandom random = direct;
+        if (random == null) {
+            READY.join();
+            random = direct;
+        }
+        random.nextBytes(out);
+        DIRECT.incrementAndGet();
+        served(n);
+    }
+
+    public static byte[] nextBytes(int n) {
+        byte[] out = new byte[n];
+        nextBytes(out);
+        return out;
+    }
+
+    private static void served(int n) {
+        SERVED.addAndGet(n);
+        if (SINCE_RESEED.addAndGet(n) >= Cryptography.RANDOM_RESEED_INTERVAL_BYTES) {
+            requestRefill();
+        }
+    }
+
+    private static void requestRefill() {
+        if (!REFILLING.compareAndSet(false, true)) {
+            return;
+        }
+        REFILLER.execute(() -> {
+            try {
+                long started = System.nanoTime();
+                if (SINCE_RESEED.get() >= Cryptography.RANDOM_RESEED_INTERVAL_BYTES) {
+                    SINCE_RESEED.set(0);
+                    publish(strongSeeded);
+                    RESEEDS.incrementAndGet();
+                }
+                byte[] data = new byte[Cryptography.RANDOM_POOL_SIZE];
+                refill.nextBytes(data);
+                block = new Block(data);
+                REFILLS.incrementAndGet();
+                REFILL_NANOS.addAndGet(System.nanoTime() - started);
+            } finally {
+                REFILLING.set(false);
+            }
+        });
+    }
+
+    public static Map<String, Object> getStats() {
+        Block current = block;
+        SecureRandom random = direct;
+        long refills = REFILLS.get();
+        long served = SERVED.get();
+        double uptime = (System.nanoTime() - STARTED) / 1e9;
+        double refillSeconds = REFILL_NANOS.get() / 1e9;
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("algorithm", random == null ? "pending" : random.getAlgorithm());
+        stats.put("strongSeeded", strongSeeded);
+        stats.put("bytesServed", served);
+        stats.put("bytesPerSecond", uptime <= 0 ? 0.0 : served / uptime);
+        stats.put("pooledRequests", POOLED.get());
+        stats.put("directRequests", DIRECT.get());
+        stats.put("available", Math.max(0, current.data.length - current.claimed.get()));
+        stats.put("refills", refills);
+        stats.put("avgRefillMs", refills == 0 ? 0.0 : REFILL_NANOS.get() / 1e6 / refills);
+        stats.put("refillBytesPerSecond", refillSeconds <= 0 ? 0.0 : refills * (double) Cryptography.RANDOM_POOL_SIZE / refillSeconds);
+        stats.put("reseeds", RESEEDS.get());
+        return stats;
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.cryptography;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import net.minecraft.core.BlockPos;
+import net.minecraft.world.level.Level;
+import net.minecraft.world.phys.AABB;
+import org.joml.primitives.AABBdc;
+import org.valkyrienskies.core.api.ships.Ship;
+import org.valkyrienskies.mod.common.VSGameUtilsKt;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+// The ships of one dimension for one tick, bucketed into a uniform XZ grid of SHIP_INDEX_CELL_SIZE cells
+// by their world AABB. Ships covering more than SHIP_INDEX_MAX_CELLS cells are kept aside and checked on
+// every query instead of being copied into each cell. Built once per tick per dimension through
+// QueryCache and only read afterwards, so any number of computer threads can query it at once.
+public class ShipIndex {
+
+    public static final class Entry {
+        public final Ship ship;
+        public final String key;
+        public final double minX, minY, minZ, maxX, maxY, maxZ;
+        public final double x, y, z;
+        private byte sky;
+        private volatile Map<String, Object> record;
+
+        private Entry(Ship ship) {
+            AABBdc box = ship.getWorldAABB();
+            this.ship = ship;
+            this.key = String.valueOf(ship.getId());
+            this.minX = box.minX();
+            this.minY = box.minY();
+            this.minZ = box.minZ();
+            this.maxX = box.maxX();
+            this.maxY = box.maxY();
+            this.maxZ = box.maxZ();
+            this.x = minX + (maxX - minX) / 2;
+            this.y = minY + (maxY - minY) / 2;
+            this.z = minZ + (maxZ - minZ) / 2;
+        }
+
+        public boolean canSeeSky(Level level) {
+            if (sky == 0) {
+                BlockPos pos = new BlockPos((int) Math.floor(x), (int) Math.floor(y), (int) Math.floor(z));
+                sky = level.hasChunkAt(pos) && level.canSeeSky(pos) ? (byte) 1 : (byte) 2;
+            }
+            return sky == 1;
+        }
+
+        public Map<String, Object> record() {
+            Map<String, Object> map = record;
+            if (map == null) {
+                map = new HashMap<>();
+                map.put("id", ship.getId());
+                map.put("slug", ship.getSlug());
+                map.put("dimension", ship.getChunkClaimDimension());
+                map.put("x", x);
+                map.put("y", y);
+                map.put("z", z);
+                map.put("max_x", maxX);
+                map.put("max_y", maxY);
+                map.put("max_z", maxZ);
+                map.put("min_x", minX);
+                map.put("min_y", minY);
+                map.put("min_z", minZ);
+                record = map;
+            }
+            return map;
+        }
+
+        private boolean matches(AABB box, boolean intersect) {
+            if (intersect) {
+                return maxX >= box.minX && minX <= box.maxX && maxY >= box.minY && minY <= box.maxY && maxZ >= box.minZ && minZ <= box.maxZ;
+            }
+            return box.contains(x, y, z);
+        }
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final Long2ObjectOpenHashMap<Entry> byId = new Long2ObjectOpenHashMap<>();
+    private final Long2ObjectOpenHashMap<IntArrayList> cells = new Long2ObjectOpenHashMap<>();
+    private final IntArrayList large = new IntArrayList();
+
+    public static ShipIndex build(Level level) {
+        ShipIndex index = new ShipIndex();
+        String dimension = VSGameUtilsKt.getDimensionId(level);
+        VSGameUtilsKt.getAllShips(level).iterator().forEachRemaining(ship -> {
+            if (dimension.equals(ship.getChunkClaimDimension())) {
+                index.add(new Entry(ship));
+            }
+        });
+        return index;
+    }
+
+    private void add(Entry entry) {
+        int i = entries.size();
+        entries.add(entry);
+        byId.put(entry.ship.getId(), entry);
+        int minCx = cell(entry.minX), maxCx = cell(entry.maxX);
+        int minCz = cell(entry.minZ), maxCz = cell(entry.maxZ);
+        if ((long) (maxCx - minCx + 1) * (maxCz - minCz + 1) > Cryptography.SHIP_INDEX_MAX_CELLS) {
+            large.add(i);
+            return;
+        }
+        for (int cx = minCx; cx <= maxCx; cx++) {
+            for (int cz = minCz; cz <= maxCz; cz++) {
+                cells.computeIfAbsent(key(cx, cz), k -> new IntArrayList(2)).add(i);
+            }
+        }
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public Entry get(long id) {
+        return byId.get(id);
+    }
+
+    // Without intersect a ship matches when its centre is inside the box, as the original scan did; with
+    // it, when its world AABB overlaps the box at all.
+    public void query(AABB box, boolean intersect, Consumer<Entry> action) {
+        int minCx = cell(box.minX), maxCx = cell(box.maxX);
+        int minCz = cell(box.minZ), maxCz = cell(box.maxZ);
+        long queryCells = (long) (maxCx - minCx + 1) * (maxCz - minCz + 1);
+        if (queryCells > Math.max(cells.size(), 1)) {
+            for (Entry entry : entries) {
+                if (entry.matches(box, intersect)) {
+                    action.accept(entry);
+                }
+            }
+            return;
+        }
+        for (int cx = minCx; cx <= maxCx; cx++) {
+            for (int cz = minCz; cz <= maxCz; cz++) {
+                IntArrayList bucket = cells.get(key(cx, cz));
+                if (bucket == null) {
+                    continue;
+                }
+                for (int n = 0; n < bucket.size(); n++) {
+                    Entry entry = entries.get(bucket.getInt(n));
+                    // A ship sits in every cell it covers; report it only from the first cell both share.
+                    if (cx == Math.max(minCx, cell(entry.minX)) && cz == Math.max(minCz, cell(entry.minZ)) && entry.matches(box, intersect)) {
+                        action.accept(entry);
+                    }
+                }
+            }
+        }
+        for (int n = 0; n < large.size(); n++) {
+            Entry entry = entries.get(large.getInt(n));
+            if (entry.matches(box, intersect)) {
+                action.accept(entry);
+            }
+        }
+    }
+
+    private static int cell(double coordinate) {
+        return (int) Math.floor(coordinate / Cryptography.SHIP_INDEX_CELL_SIZE);
+    }
+
+    private static long key(int cx, int cz) {
+        return ((long) cx << 32) | (cz & 0xFFFFFFFFL);
+    }
+}
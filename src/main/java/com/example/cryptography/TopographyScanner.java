@@ -0,0 +1,137 @@
+package com.example.cryptography;
+
+import dan200.computercraft.shared.computer.core.ServerComputer;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import net.minecraft.server.level.ServerLevel;
+import net.minecraft.world.level.chunk.LevelChunk;
+import net.minecraft.world.level.levelgen.Heightmap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TopographyScanner {
+
+    private static final Queue<Job> JOBS = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger NEXT_ID = new AtomicInteger();
+
+    private static final class Job {
+        private final int id;
+        private final int computerId;
+        private final ServerComputer computer;
+        private final ServerLevel level;
+        private final int minX, minZ, maxX, maxZ;
+        private final boolean allowLoad;
+        private final int chunksX, chunksZ;
+        private int next;
+        private int pages;
+        private int skipped;
+        private volatile boolean cancelled;
+
+        private Job(int id, int computerId, ServerComputer computer, ServerLevel level, int minX, int minZ, int maxX, int maxZ, boolean allowLoad) {
+            this.id = id;
+            this.computerId = computerId;
+            this.computer = computer;
+            this.level = level;
+            this.minX = minX;
+            this.minZ = minZ;
+            this.maxX = maxX;
+            this.maxZ = maxZ;
+            this.allowLoad = allowLoad;
+            this.chunksX = (maxX >> 4) - (minX >> 4) + 1;
+            this.chunksZ = (maxZ >> 4) - (minZ >> 4) + 1;
+        }
+
+        private boolean isDone() {
+            return next >= chunksX * chunksZ;
+        }
+
+        private void scanNextChunk() {
+            int cx = (minX >> 4) + next % chunksX;
+            int cz = (minZ >> 4) + next / chunksX;
+            next++;
+            LevelChunk chunk = allowLoad ? level.getChunk(cx, cz) : level.getChunkSource().getChunkNow(cx, cz);
+            if (chunk == null) {
+                skipped++;
+                return;
+            }
+            int startX = Math.max(minX, cx << 4);
+            int endX = Math.min(maxX, (cx << 4) + 15);
+            int startZ = Math.max(minZ, cz << 4);
+            int endZ = Math.min(maxZ, (cz << 4) + 15);
+            int width = endX - startX + 1;
+            int depth = endZ - startZ + 1;
+            int[] heights = new int[width * depth];
+            for (int bz = startZ; bz <= endZ; bz++) {
+                for (int bx = startX; bx <= endX; bx++) {
+                    heights[(bz - startZ) * width + (bx - startX)] = chunk.getHeight(Heightmap.Types.MOTION_BLOCKING, bx & 15, bz & 15);
+                }
+            }
+            computer.queueEvent("ComputerScanTopographyPage", new Object[]{id, pages++, startX, startZ, width, depth, IntArrayList.wrap(heights)});
+        }
+    }
+
+    public static int submit(int computerId, ServerComputer computer, ServerLevel level, int minX, int minZ, int maxX, int maxZ, boolean allowLoad) {
+        int id = NEXT_ID.incrementAndGet();
+        JOBS.add(new Job(id, computerId, computer, level, minX, minZ, maxX, maxZ, allowLoad));
+        return id;
+    }
+
+    public static int countJobs(int computerId) {
+        int count = 0;
+        for (Job job : JOBS) {
+            if (job.computerId == computerId) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public static boolean cancel(int computerId, int jobId) {
+        for (Job job : JOBS) {
+            if (job.id == jobId && job.computerId == computerId) {
+                job.cancelled = true;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static void cancelAll(int computerId) {
+        for (Job job : JOBS) {
+            if (job.computerId == computerId) {
+                job.cancelled = true;
+            }
+        }
+    }
+
+    // Runs on the server thread. Jobs take turns one chunk at a time until the tick budget is spent,
+    // so a large scan spreads over several ticks instead of stalling one. Each computer gets at most
+    // TOPOGRAPHY_PAGES_PER_TICK events per tick, since ComputerCraft drops events past its queue limit.
+    public static void tick() {
+        long deadline = System.nanoTime() + Cryptography.TOPOGRAPHY_TICK_BUDGET_NANOS;
+        Int2IntOpenHashMap queued = new Int2IntOpenHashMap();
+        List<Job> deferred = new ArrayList<>();
+        Job job;
+        while (System.nanoTime() < deadline && (job = JOBS.poll()) != null) {
+            if (job.cancelled || !job.computer.isOn()) {
+                continue;
+            }
+            if (queued.get(job.computerId) >= Cryptography.TOPOGRAPHY_PAGES_PER_TICK) {
+                deferred.add(job);
+                continue;
+            }
+            queued.addTo(job.computerId, 1);
+            job.scanNextChunk();
+            if (job.isDone()) {
+                job.computer.queueEvent("ComputerScanTopographyComplete", new Object[]{job.id, job.pages, job.skipped});
+            } else {
+                JOBS.add(job);
+            }
+        }
+        JOBS.addAll(deferred);
+    }
+}
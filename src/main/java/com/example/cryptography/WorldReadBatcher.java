@@ -0,0 +1,220 @@
+package com.example.cryptography;
+
+import dan200.computercraft.api.lua.ILuaCallback;
+import dan200.computercraft.api.lua.LuaException;
+import dan200.computercraft.api.lua.MethodResult;
+import dan200.computercraft.shared.computer.core.ServerComputer;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// World reads from computers, run on the server thread at the end of each tick instead of racing it from
+// the computer thread. The calling coroutine yields on coord_world_read until its read has run; the result
+// is handed over in Java, so large tables are converted to Lua once. Waiting reads with the same key run
+// once and every waiter gets that result. Reads run in arrival order until the configured
+// worldReadTickBudgetMicros is spent and the rest wait for the next tick. Large reads come as Steps, one chunk or so per step; the
+// budget is checked between steps, and a read still unfinished after WORLD_READ_STEPS_PER_TURN steps goes
+// to the back of the line, so it may span several ticks and see each chunk as of the tick it was read.
+public class WorldReadBatcher {
+
+    public static final String EVENT = "coord_world_read";
+
+    @FunctionalInterface
+    public interface Read {
+        Object read() throws LuaException;
+    }
+
+    public interface Steps {
+        // Does one bounded piece of the read and returns true once result() is ready.
+        boolean step() throws LuaException;
+
+        Object result();
+    }
+
+    @FunctionalInterface
+    public interface Step {
+        void run(int index) throws LuaException;
+    }
+
+    // Runs step for 0 until count, one index per step, then finish for the result.
+    public static Steps steps(int count, Step step, Read finish) {
+        return new Steps() {
+            private int next;
+            private Object result;
+
+            @Override
+            public boolean step() throws LuaException {
+                if (next < count) {
+                    step.run(next++);
+                    return false;
+                }
+                result = finish.read();
+                return true;
+            }
+
+            @Override
+            public Object result() {
+                return result;
+            }
+        };
+    }
+
+    private static final class Pending {
+        private final Steps steps;
+        private final List<Waiter> waiters = new ArrayList<>(1);
+
+        private Pending(Steps steps) {
+            this.steps = steps;
+        }
+    }
+
+    private static final class Waiter implements ILuaCallback {
+        private final ServerComputer computer;
+        private final int ticket;
+        private volatile boolean done;
+        private Object result;
+        private String error;
+
+        private Waiter(ServerComputer computer, int ticket) {
+            this.computer = computer;
+            this.ticket = ticket;
+        }
+
+        private void complete(Object result, String error) {
+            this.result = result;
+            this.error = error;
+            done = true;
+            computer.queueEvent(EVENT, new Object[]{ticket});
+        }
+
+        @Override
+        public MethodResult resume(Object[] args) throws LuaException {
+            // Other coroutines' reads share the event name; keep waiting until ours is done.
+            if (!done || args.length < 2 || !(args[1] instanceof Number) || ((Number) args[1]).intValue() != ticket) {
+                return MethodResult.pullEvent(EVENT, this);
+            }
+            if (error != null) {
+                throw new LuaException(error);
+            }
+            return MethodResult.of(result);
+        }
+    }
+
+    // Guarded by itself. Reads without a key get a key of their own so they never coalesce.
+    private static final Map<Object, Pending> PENDING = new LinkedHashMap<>();
+    // Started but unfinished reads. Only the server thread adds and removes; others only count.
+    private static final Queue<Pending> RESUMED = new ConcurrentLinkedQueue<>();
+    private static boolean resumedTurn;
+    private static final AtomicInteger NEXT_TICKET = new AtomicInteger();
+    private static final AtomicLong EXECUTED = new AtomicLong();
+    private static final AtomicLong COALESCED = new AtomicLong();
+    private static final AtomicLong REJECTED = new AtomicLong();
+    private static final AtomicLong DEFERRED_TICKS = new AtomicLong();
+    private static final AtomicLong RUN_NANOS = new AtomicLong();
+
+    public static MethodResult submit(@Nullable ServerComputer computer, @Nullable Object key, Read read) throws LuaException {
+        return submit(computer, key, steps(0, index -> { }, read));
+    }
+
+    public static MethodResult submit(@Nullable ServerComputer computer, @Nullable Object key, Steps steps) throws LuaException {
+        if (computer == null) {
+            // Nothing to wake up afterwards, so read in place as before.
+            while (!steps.step()) {
+            }
+            return MethodResult.of(steps.result());
+        }
+        Waiter waiter = new Waiter(computer, NEXT_TICKET.incrementAndGet());
+        synchronized (PENDING) {
+            Pending pending = key == null ? null : PENDING.get(key);
+            if (pending == null) {
+                if (PENDING.size() + RESUMED.size() >= Cryptography.WORLD_READ_MAX_PENDING) {
+                    REJECTED.incrementAndGet();
+                    throw new LuaException("Too many pending world reads");
+                }
+                pending = new Pending(steps);
+                PENDING.put(key == null ? new Object() : key, pending);
+            } else {
+                COALESCED.incrementAndGet();
+            }
+            pending.waiters.add(waiter);
+        }
+        return MethodResult.pullEvent(EVENT, waiter);
+    }
+
+    // Runs on the server thread. A read is removed from the map before it runs, so no waiter can join it
+    // afterwards; identical reads arriving later are queued afresh and see the newer world. New and
+    // resumed reads take turns, so neither a burst of small reads nor one large read starves the other.
+    public static void tick() {
+        long start = System.nanoTime();
+        long deadline = start + CryptographyConfig.WORLD_READ_TICK_BUDGET_MICROS.get() * 1000L;
+        while (System.nanoTime() < deadline) {
+            Pending pending = resumedTurn ? RESUMED.poll() : null;
+            if (pending == null) {
+                synchronized (PENDING) {
+                    Iterator<Pending> it = PENDING.values().iterator();
+                    if (it.hasNext()) {
+                        pending = it.next();
+                        it.remove();
+                    }
+                }
+            }
+            if (pending == null) {
+                pending = RESUMED.poll();
+                if (pending == null) {
+                    break;
+                }
+            }
+            resumedTurn = !resumedTurn;
+            String error = null;
+            boolean done = false;
+            try {
+                for (int i = 0; i < Cryptography.WORLD_READ_STEPS_PER_TURN && !done && System.nanoTime() < deadline; i++) {
+                    done = pending.steps.step();
+                }
+            } catch (LuaException e) {
+                error = e.getMessage();
+            } catch (RuntimeException e) {
+                error = e.toString();
+            }
+            if (!done && error == null) {
+                RESUMED.add(pending);
+                continue;
+            }
+            EXECUTED.incrementAndGet();
+            Object result = error == null ? pending.steps.result() : null;
+            for (Waiter waiter : pending.waiters) {
+                waiter.complete(result, error);
+            }
+        }
+        RUN_NANOS.addAndGet(System.nanoTime() - start);
+        synchronized (PENDING) {
+            if (!PENDING.isEmpty() || !RESUMED.isEmpty()) {
+                DEFERRED_TICKS.incrementAndGet();
+            }
+        }
+    }
+
+    public static Map<String, Long> getStats() {
+        Map<String, Long> stats = new HashMap<>();
+        synchronized (PENDING) {
+            stats.put("pending", (long) PENDING.size());
+        }
+        stats.put("resumed", (long) RESUMED.size());
+        long executed = EXECUTED.get();
+        stats.put("executed", executed);
+        stats.put("coalesced", COALESCED.get());
+        stats.put("rejected", REJECTED.get());
+        stats.put("deferredTicks", DEFERRED_TICKS.get());
+        stats.put("avgRunMicros", executed == 0 ? 0 : RUN_NANOS.get() / 1000 / executed);
+        return stats;
+    }
+}
@@ -20,7 +20,7 @@ public abstract class ItemPocketComputerMixin {
 
     @Inject(method = "createServerComputer", at = @At("RETURN"), remap = false)
     public void createServerComputer(ServerLevel world, Entity entity, Container inventory, ItemStack stack, CallbackInfoReturnable<PocketServerComputer> cir) {
-        cir.getReturnValue().addAPI(new CryptographyAPI());
+        cir.getReturnValue().addAPI(new CryptographyAPI(cir.getReturnValue()));
         if (isUsePhoneAPI) {
             cir.getReturnValue().addAPI(new CoordinatePocketComputerAPI(entity, true));
         }
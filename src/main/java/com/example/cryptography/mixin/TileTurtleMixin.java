@@ -1,12 +1,12 @@
 package com.example.cryptography.mixin;
 
+import com.example.cryptography.ComputerRegistry;
 import com.example.cryptography.CoordinateAPI;
 import com.example.cryptography.CryptographyAPI;
 import dan200.computercraft.shared.computer.core.ComputerFamily;
 import dan200.computercraft.shared.computer.core.ServerComputer;
 import dan200.computercraft.shared.turtle.blocks.TurtleBlockEntity;
 import net.minecraft.core.BlockPos;
-import net.minecraft.world.level.Level;
 import net.minecraft.world.level.block.entity.BlockEntityType;
 import net.minecraft.world.level.block.state.BlockState;
 import org.spongepowered.asm.mixin.Mixin;
@@ -17,18 +17,15 @@ import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
 
 import java.util.function.IntSupplier;
 
-import static com.example.cryptography.Cryptography.ComputerPosMapper;
-
 @Mixin(TurtleBlockEntity.class)
 public abstract class TileTurtleMixin {
     private BlockPos pos;
 
     @Inject(method = "createComputer",at = @At("RETURN"),remap = false)
     private void createComputer(int id, CallbackInfoReturnable<ServerComputer> cir){
-        ComputerPosMapper.put(id, pos);
-        cir.getReturnValue().addAPI(new CryptographyAPI());
-        Level level = cir.getReturnValue().getLevel();
-        cir.getReturnValue().addAPI(new CoordinateAPI(ComputerPosMapper.get(id), id, level, cir.getReturnValue()));
+        cir.getReturnValue().addAPI(new CryptographyAPI(cir.getReturnValue()));
+        ComputerRegistry.Entry entry = ComputerRegistry.register(id, pos, cir.getReturnValue().getLevel());
+        cir.getReturnValue().addAPI(new CoordinateAPI(entry, cir.getReturnValue()));
     }
 
     @Inject(method = "<init>", at = @At("RETURN"), remap = false)